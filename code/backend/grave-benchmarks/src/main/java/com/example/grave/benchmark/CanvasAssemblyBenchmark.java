@@ -0,0 +1,89 @@
+package com.example.grave.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.impl.CanvasLoader;
+
+/**
+ * 由查询结果组装 CanvasVO（CanvasLoader.fill），Mapper 换成直接返回预先构造好的行，只测内存中的分组拼装
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanvasAssemblyBenchmark {
+
+    @Param({"1", "20"})
+    public int canvases;
+    @Param({"5", "50", "500"})
+    public int boxes;
+
+    private CanvasLoader canvasLoader;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        List<ImageBox> images = new ArrayList<>();
+        List<TextBox> texts = new ArrayList<>();
+        List<MarkdownBox> markdowns = new ArrayList<>();
+        List<Heritage> heritages = new ArrayList<>();
+        List<HeritageItem> items = new ArrayList<>();
+        for (long id = 1; id <= canvases; id++) {
+            CanvasVO canvasVO = CanvasFixtures.canvasVO(id, boxes);
+            images.addAll(canvasVO.getImages());
+            texts.addAll(canvasVO.getTexts());
+            markdowns.addAll(canvasVO.getMarkdowns());
+            for (Heritage heritage : canvasVO.getHeritages()) {
+                items.addAll(heritage.getItems());
+                heritage.setItems(null);
+                heritages.add(heritage);
+            }
+        }
+        CanvasMapper mapper = (CanvasMapper) Proxy.newProxyInstance(CanvasMapper.class.getClassLoader(),
+                new Class<?>[] {CanvasMapper.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getImagesByPids" -> images;
+                    case "getTextsByPids" -> texts;
+                    case "getMarkdownsByPids" -> markdowns;
+                    case "getHeritagesByPids" -> heritages;
+                    case "getHeritageItemsByHeritageIds" -> items;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        canvasLoader = new CanvasLoader();
+        Field field = CanvasLoader.class.getDeclaredField("canvasMapper");
+        field.setAccessible(true);
+        field.set(canvasLoader, mapper);
+    }
+
+    @Benchmark
+    public List<CanvasVO> fill() {
+        List<CanvasVO> canvasVOs = new ArrayList<>(canvases);
+        for (long id = 1; id <= canvases; id++) {
+            canvasVOs.add(CanvasVO.builder().id(id).userId(1).title("画布").isPublic(1).build());
+        }
+        return canvasLoader.fill(canvasVOs, true);
+    }
+}
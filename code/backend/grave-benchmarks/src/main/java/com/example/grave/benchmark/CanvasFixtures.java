@@ -0,0 +1,162 @@
+package com.example.grave.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+/**
+ * 基准用的画布数据：每类组件 boxes 个，遗产 boxes/5 个（至少一个），每个遗产 5 个遗产项
+ */
+final class CanvasFixtures {
+
+    static final int ITEMS_PER_HERITAGE = 5;
+
+    private static final String TEXT = "这是一段用于基准测试的文本内容，长度与真实画布中的文本框相近。";
+    private static final String MARKDOWN = "# 标题\n\n- 第一项\n- 第二项\n\n" + TEXT;
+
+    private CanvasFixtures() {
+    }
+
+    static int heritageCount(int boxes) {
+        return Math.max(1, boxes / 5);
+    }
+
+    static List<ImageBox> images(long pid, int count, long firstId) {
+        List<ImageBox> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ImageBox image = new ImageBox();
+            image.setId(firstId + i);
+            image.setPid(pid);
+            image.setImageUrl("/uploads/ab/" + Long.toHexString(firstId + i) + ".jpg");
+            place(i, image::setLeft, image::setTop, image::setWidth, image::setHeight);
+            images.add(image);
+        }
+        return images;
+    }
+
+    static List<TextBox> texts(long pid, int count, long firstId) {
+        List<TextBox> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TextBox text = new TextBox();
+            text.setId(firstId + i);
+            text.setPid(pid);
+            text.setContent(TEXT);
+            place(i, text::setLeft, text::setTop, text::setWidth, text::setHeight);
+            texts.add(text);
+        }
+        return texts;
+    }
+
+    static List<MarkdownBox> markdowns(long pid, int count, long firstId) {
+        List<MarkdownBox> markdowns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MarkdownBox markdown = new MarkdownBox();
+            markdown.setId(firstId + i);
+            markdown.setPid(pid);
+            markdown.setContent(MARKDOWN);
+            place(i, markdown::setLeft, markdown::setTop, markdown::setWidth, markdown::setHeight);
+            markdowns.add(markdown);
+        }
+        return markdowns;
+    }
+
+    static List<Heritage> heritages(long pid, int count, long firstId) {
+        List<Heritage> heritages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Heritage heritage = new Heritage();
+            heritage.setId(firstId + i);
+            heritage.setPid(pid);
+            heritage.setReleased(true);
+            place(i, heritage::setLeft, heritage::setTop, heritage::setWidth, heritage::setHeight);
+            heritage.setItems(items(firstId + i, firstId * ITEMS_PER_HERITAGE + (long) i * ITEMS_PER_HERITAGE));
+            heritages.add(heritage);
+        }
+        return heritages;
+    }
+
+    static List<HeritageItem> items(long heritageId, long firstId) {
+        List<HeritageItem> items = new ArrayList<>(ITEMS_PER_HERITAGE);
+        for (int i = 0; i < ITEMS_PER_HERITAGE; i++) {
+            HeritageItem item = new HeritageItem();
+            item.setId(firstId + i);
+            item.setHeritageId(heritageId);
+            item.setContent(TEXT);
+            item.setIsPrivate(i % 2 == 1);
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * 组装完成的画布，ID 从 id*100000 开始分配，不同画布之间不重复
+     */
+    static CanvasVO canvasVO(long id, int boxes) {
+        long base = id * 100000;
+        return CanvasVO.builder()
+                .id(id)
+                .userId(1)
+                .title("画布 " + id)
+                .isPublic(1)
+                .images(images(id, boxes, base))
+                .texts(texts(id, boxes, base))
+                .markdowns(markdowns(id, boxes, base))
+                .heritages(heritages(id, heritageCount(boxes), base))
+                .build();
+    }
+
+    /**
+     * 待保存的画布，ID 由数据库生成
+     */
+    static CanvasDTO canvasDTO(int boxes, int heritages) {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setUserId(1);
+        canvasDTO.setTitle("基准画布");
+        canvasDTO.setIsPublic(1);
+        canvasDTO.setImages(clearIds(images(0, boxes, 0)));
+        canvasDTO.setTexts(clearIds(texts(0, boxes, 0)));
+        canvasDTO.setMarkdowns(clearIds(markdowns(0, boxes, 0)));
+        List<Heritage> heritageList = heritages(0, heritages, 0);
+        for (Heritage heritage : heritageList) {
+            heritage.setId(null);
+            heritage.setReleased(null);
+            for (HeritageItem item : heritage.getItems()) {
+                item.setId(null);
+                item.setHeritageId(null);
+            }
+        }
+        canvasDTO.setHeritages(heritageList);
+        return canvasDTO;
+    }
+
+    private static <T> List<T> clearIds(List<T> boxes) {
+        for (T box : boxes) {
+            if (box instanceof ImageBox image) {
+                image.setId(null);
+            } else if (box instanceof TextBox text) {
+                text.setId(null);
+            } else if (box instanceof MarkdownBox markdown) {
+                markdown.setId(null);
+            }
+        }
+        return boxes;
+    }
+
+    private static void place(int i, IntSetter left, IntSetter top, IntSetter width, IntSetter height) {
+        left.set(40 + (i % 20) * 60);
+        top.set(40 + (i / 20) * 60);
+        width.set(300);
+        height.set(200);
+    }
+
+    @FunctionalInterface
+    private interface IntSetter {
+        void set(int value);
+    }
+}
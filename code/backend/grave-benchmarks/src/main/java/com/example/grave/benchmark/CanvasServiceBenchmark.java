@@ -0,0 +1,98 @@
+package com.example.grave.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.grave.GraveApplication;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+import com.example.grave.service.impl.CanvasCache;
+
+/**
+ * CanvasServiceImp 的保存与读取，运行在 MySQL 模式的内存 H2 上
+ * getCold 每次先失效缓存，测的是一次完整的数据库加载（snapshot=true 时读快照）；getCached 测缓存命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanvasServiceBenchmark {
+
+    @Param({"10", "100"})
+    public int heritages;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private static final int BOXES = 20;
+
+    private ConfigurableApplicationContext context;
+    private CanvasService canvasService;
+    private CanvasCache canvasCache;
+    private long canvasId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 以命令行参数传入，优先级高于 grave 自带的 application.yml
+        context = new SpringApplicationBuilder(GraveApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID()
+                                + ";MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=always",
+                        "--spring.sql.init.schema-locations=classpath:schema-h2.sql",
+                        "--canvas.snapshot.enabled=" + snapshot,
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN");
+        canvasService = context.getBean(CanvasService.class);
+        canvasCache = context.getBean(CanvasCache.class);
+        CanvasDTO canvasDTO = CanvasFixtures.canvasDTO(BOXES, heritages);
+        canvasService.saveCanvas(canvasDTO, false);
+        canvasId = canvasDTO.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long save() {
+        CanvasDTO canvasDTO = CanvasFixtures.canvasDTO(BOXES, heritages);
+        canvasService.saveCanvas(canvasDTO, false);
+        return canvasDTO.getId();
+    }
+
+    @Benchmark
+    public CanvasVO getCold() {
+        canvasCache.invalidate(canvasId);
+        return canvasService.getCanvasById(-1, canvasId);
+    }
+
+    @Benchmark
+    public CanvasVO getCached() {
+        return canvasService.getCanvasById(-1, canvasId);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.grave.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.grave.common.result.Result;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Result&lt;CanvasVO&gt;（单个画布）和 Result&lt;List&lt;CanvasVO&gt;&gt;（首页 20 个画布）的 Jackson 序列化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final int FEED_SIZE = 20;
+
+    @Param({"5", "50", "500"})
+    public int boxes;
+
+    private ObjectMapper objectMapper;
+    private Result<CanvasVO> single;
+    private Result<List<CanvasVO>> feed;
+
+    @Setup
+    public void setup() {
+        // 与 Spring MVC 默认的消息转换器使用相同的配置
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        single = Result.success(CanvasFixtures.canvasVO(1, boxes));
+        List<CanvasVO> canvasVOs = new ArrayList<>(FEED_SIZE);
+        for (long id = 1; id <= FEED_SIZE; id++) {
+            canvasVOs.add(CanvasFixtures.canvasVO(id, boxes));
+        }
+        feed = Result.success(canvasVOs);
+    }
+
+    @Benchmark
+    public byte[] singleCanvas() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(single);
+    }
+
+    @Benchmark
+    public byte[] canvasList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(feed);
+    }
+}
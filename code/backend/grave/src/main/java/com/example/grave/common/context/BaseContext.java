@@ -1,8 +1,12 @@
 package com.example.grave.common.context;
 
+/**
+ * 当前请求的用户ID
+ * 由拦截器在请求开始时设置、请求结束时清除，线程池线程不会残留上一个请求的用户
+ */
 public class BaseContext {
 
-    public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
+    private static final ThreadLocal<Long> threadLocal = new ThreadLocal<>();
 
     public static void setCurrentId(Long id) {
         threadLocal.set(id);
@@ -16,4 +20,4 @@ public class BaseContext {
         threadLocal.remove();
     }
 
-}
\ No newline at end of file
+}
@@ -1,69 +1,70 @@
-// package com.example.grave.config;
+package com.example.grave.config;
 
-// import java.util.HashMap;
-// import java.util.Map;
+import java.util.Map;
 
-// import org.apache.kafka.clients.consumer.ConsumerConfig;
-// import org.apache.kafka.common.serialization.StringDeserializer;
-// import org.springframework.beans.factory.annotation.Value;
-// import org.springframework.context.annotation.Bean;
-// import org.springframework.context.annotation.Configuration;
-// import org.springframework.kafka.annotation.EnableKafka;
-// import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
-// import org.springframework.kafka.core.*;
-// import org.springframework.kafka.support.serializer.JsonDeserializer;
-// import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
 
-// import com.example.grave.pojo.entity.HeritageRequest;
+/**
+ * 仅在 heritage.claim.queue=kafka 时启用，默认使用进程内领取队列
+ */
+@Configuration
+@EnableKafka
+@ConditionalOnProperty(name = "heritage.claim.queue", havingValue = "kafka")
+public class KafkaConfig {
 
-// @Configuration
-// @EnableKafka
-// public class KafkaConfig {
+    @Value("${kafka.topics.heritage-requests}")
+    private String heritageRequestsTopic;
 
-//     @Value("${kafka.topics.heritage-requests}")
-//     private String heritageRequestsTopic;
-    
-//     @Value("${spring.kafka.bootstrap-servers}")
-//     private String bootstrapServers;
-    
-//     @Value("${spring.kafka.consumer.group-id}")
-//     private String groupId;
-    
-//     // 自定义主题配置
-//     @Bean
-//     public String heritageRequestsTopicName() {
-//         return heritageRequestsTopic;
-//     }
-    
-//     // 创建消费者工厂
-//     @Bean
-//     public ConsumerFactory<String, HeritageRequest> consumerFactory() {
-//         Map<String, Object> props = new HashMap<>();
-//         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-//         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        
-//         // 配置JsonDeserializer信任所有包
-//         JsonDeserializer<HeritageRequest> jsonDeserializer = new JsonDeserializer<>(HeritageRequest.class);
-//         jsonDeserializer.addTrustedPackages("*");
-//         jsonDeserializer.setUseTypeMapperForKey(true);
-        
-//         // 使用ErrorHandlingDeserializer包装JsonDeserializer，提供更好的错误处理
-//         ErrorHandlingDeserializer<HeritageRequest> errorHandlingDeserializer = 
-//                 new ErrorHandlingDeserializer<>(jsonDeserializer);
-        
-//         return new DefaultKafkaConsumerFactory<>(
-//                 props, 
-//                 new StringDeserializer(), 
-//                 errorHandlingDeserializer
-//         );
-//     }
-    
-//     // 配置监听器工厂
-//     @Bean
-//     public ConcurrentKafkaListenerContainerFactory<String, HeritageRequest> kafkaListenerContainerFactory() {
-//         ConcurrentKafkaListenerContainerFactory<String, HeritageRequest> factory = 
-//                 new ConcurrentKafkaListenerContainerFactory<>();
-//         factory.setConsumerFactory(consumerFactory());
-//         return factory;
-//     }
-// } 
\ No newline at end of file
+    @Value("${kafka.topics.heritage-results}")
+    private String heritageResultsTopic;
+
+    @Value("${heritage.claim.partitions:8}")
+    private int partitions;
+
+    // 请求主题按 heritageId 分区，分区数决定可并行处理的遗产数
+    @Bean
+    public NewTopic heritageRequestsTopic() {
+        return TopicBuilder.name(heritageRequestsTopic).partitions(partitions).replicas(1).build();
+    }
+
+    @Bean
+    public NewTopic heritageResultsTopic() {
+        return TopicBuilder.name(heritageResultsTopic).partitions(partitions).replicas(1).build();
+    }
+
+    // 创建消费者工厂，请求和结果两种消息按类型头反序列化
+    @Bean
+    public ConsumerFactory<String, Object> consumerFactory(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties(null);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.example.grave.pojo.entity");
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    // 配置监听器工厂，每个分区一个消费线程
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
+            ConsumerFactory<String, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(partitions);
+        return factory;
+    }
+}
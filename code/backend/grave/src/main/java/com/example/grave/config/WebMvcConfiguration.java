@@ -1,6 +1,7 @@
 package com.example.grave.config;
 
 import com.example.grave.interceptor.JwtTokenAdminInterceptor;
+import com.example.grave.interceptor.RequestStatementInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -12,6 +13,8 @@ public class WebMvcConfiguration implements WebMvcConfigurer {
 
     @Autowired
     private JwtTokenAdminInterceptor jwtTokenAdminInterceptor;
+    @Autowired
+    private RequestStatementInterceptor requestStatementInterceptor;
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -29,5 +32,9 @@ public class WebMvcConfiguration implements WebMvcConfigurer {
                 .addPathPatterns("/user/**")
                 .excludePathPatterns("/user/login")
                 .order(0);
+        // 统计每个请求内的 SQL 执行次数
+        registry.addInterceptor(requestStatementInterceptor)
+                .addPathPatterns("/**")
+                .order(-1);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.grave.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import com.example.grave.controller.user.CanvasEditSocketHandler;
+import com.example.grave.interceptor.CanvasEditHandshakeInterceptor;
+
+/**
+ * 画布协同编辑通道：ws://host/ws/canvas/{canvasId}?userId=xxx
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private CanvasEditSocketHandler canvasEditSocketHandler;
+    @Autowired
+    private CanvasEditHandshakeInterceptor canvasEditHandshakeInterceptor;
+
+    @Override
+    public void registerWebSocketHandlers(@NonNull WebSocketHandlerRegistry registry) {
+        registry.addHandler(canvasEditSocketHandler, "/ws/canvas/*")
+                .addInterceptors(canvasEditHandshakeInterceptor)
+                .setAllowedOrigins("http://localhost:1024");
+    }
+}
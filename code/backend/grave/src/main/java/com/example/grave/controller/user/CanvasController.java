@@ -1,5 +1,6 @@
 package com.example.grave.controller.user;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,9 +17,16 @@ import org.springframework.web.bind.annotation.RestController;
 import com.example.grave.common.context.BaseContext;
 import com.example.grave.common.result.Result;
 import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
 import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.vo.CanvasPageVO;
+import com.example.grave.pojo.vo.CanvasSearchPageVO;
 import com.example.grave.pojo.vo.CanvasVO;
 import com.example.grave.service.CanvasService;
+import com.example.grave.service.impl.CanvasAutosaveQueue;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.WebRequest;
 import com.example.grave.pojo.entity.HeritageItem;
 
 
@@ -27,9 +35,13 @@ import com.example.grave.pojo.entity.HeritageItem;
 @RestController
 @RequestMapping("/user/canvas")
 public class CanvasController {
+
+    private static final String NDJSON = "application/x-ndjson";
     
     @Autowired
     private CanvasService canvasService;
+    @Autowired
+    private CanvasAutosaveQueue canvasAutosaveQueue;
     @PostMapping("/save")
     public Result submit(@RequestBody CanvasDTO canvasDTO){
         System.out.println("submit");
@@ -44,12 +56,36 @@ public class CanvasController {
         if(canvasDTO.getId() == -1){
             canvasService.saveCanvas(canvasDTO,false);
         }else{
-            canvasService.deleteCanvas(canvasDTO.getId(),true);
-            canvasService.saveCanvas(canvasDTO, true);
+            // 开启写后模式时只记录最新内容，短时间内的多次保存合并为一次写入
+            canvasAutosaveQueue.submit(canvasDTO);
         }
         return Result.success(canvasDTO.getId());
     }
 
+    /**
+     * 增量保存画布，只提交新增、修改、删除的组件
+     */
+    @PostMapping("/patch")
+    public Result<CanvasPatchDTO> patch(@RequestBody CanvasPatchDTO canvasPatchDTO){
+        Long userId = BaseContext.getCurrentId();
+        if(userId == -1){
+            return Result.error("用户未登录");
+        }
+        // 增量基于数据库中的内容，先写入排队中的整画布保存
+        canvasAutosaveQueue.flush(canvasPatchDTO.getId());
+        CanvasPatchDTO saved;
+        try {
+            saved = canvasService.patchCanvas(userId, canvasPatchDTO);
+        } catch (RuntimeException e) {
+            // 修改已被领取的遗产项等冲突，整个增量已回滚
+            return Result.error(e.getMessage());
+        }
+        if(saved == null){
+            return Result.error("画布不存在或无权修改");
+        }
+        return Result.success(saved);
+    }
+
     @PostMapping("/get")
     public Result<CanvasVO> getCanvas(int userId,int id){
         CanvasVO canvasVO = canvasService.getCanvas(userId, id);
@@ -62,6 +98,29 @@ public class CanvasController {
         return Result.success(canvasVO);
     }
 
+    /**
+     * 首页画布的流式版本，响应为 NDJSON，每行一个画布
+     */
+    @GetMapping(value = "/load/stream", produces = NDJSON)
+    public void streamCanvas(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        canvasService.streamFeed(response.getOutputStream());
+    }
+
+    /**
+     * 关键词搜索公开画布，未登录也可使用
+     */
+    @GetMapping("/search")
+    public Result<CanvasSearchPageVO> search(@RequestParam("q") String keyword,
+                                             @RequestParam(value = "page", defaultValue = "0") int page,
+                                             @RequestParam(value = "size", defaultValue = "20") int size) {
+        if (keyword == null || keyword.isBlank()) {
+            return Result.error("搜索关键词不能为空");
+        }
+        return Result.success(canvasService.searchCanvas(keyword, page, size));
+    }
+
     /**
      * 获取非私密遗产内容
      */
@@ -103,14 +162,83 @@ public class CanvasController {
         return Result.success(canvasVO);
     }
 
+    /**
+     * 分页获取当前用户的画布摘要，按创建时间倒序，cursor 传上一页返回的 nextCursor
+     */
+    @GetMapping("/summary")
+    public Result<CanvasPageVO> getCanvasPage(@RequestParam(value = "cursor", required = false) Long cursor,
+                                              @RequestParam(value = "size", defaultValue = "20") int size) {
+        long userId = BaseContext.getCurrentId();
+        if(userId == -1){
+            return Result.error("用户未登录");
+        }
+        return Result.success(canvasService.getCanvasPage(userId, cursor, size));
+    }
+
     @GetMapping("/delete/{canvasId}")
     public Result<Void> deleteCanvas(@PathVariable long canvasId) {
+        canvasAutosaveQueue.discard(canvasId);
         canvasService.deleteCanvas(canvasId,false);
         return Result.success();
     }
     
+    /**
+     * 获取画布的流式版本，响应为 NDJSON，按 canvas、image、text、markdown、heritage、heritageItem 的顺序逐行写出
+     */
+    @GetMapping(value = "/get/{canvasId}/{needUserId}/stream", produces = NDJSON)
+    public void streamCanvasById(@PathVariable long canvasId, @PathVariable int needUserId,
+                                 HttpServletResponse response) throws IOException {
+        long userId = BaseContext.getCurrentId();
+        if(userId == -1 && needUserId ==1){
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "用户未登录");
+            return;
+        }
+        else if(needUserId == 0){
+            userId = -1;
+        }
+        else{
+            canvasAutosaveQueue.flush(canvasId);
+        }
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        if(!canvasService.streamCanvasById(userId, canvasId, response.getOutputStream())){
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "画布不存在");
+        }
+    }
+
+    /**
+     * 只获取与视口 [left, left+width] x [top, top+height] 相交的组件，用于超大画布按屏加载
+     */
+    @GetMapping("/get/{canvasId}/{needUserId}/viewport")
+    public Result<CanvasVO> getCanvasViewport(@PathVariable long canvasId, @PathVariable int needUserId,
+                                              @RequestParam("left") int left, @RequestParam("top") int top,
+                                              @RequestParam("width") int width, @RequestParam("height") int height) {
+        long userId = BaseContext.getCurrentId();
+        if(userId == -1 && needUserId ==1){
+            return Result.error("用户未登录");
+        }
+        else if(needUserId == 0){
+            userId = -1;
+        }
+        else{
+            canvasAutosaveQueue.flush(canvasId);
+        }
+        if(width < 0 || height < 0){
+            return Result.error("视口大小不能为负");
+        }
+        CanvasVO canvasVO = canvasService.getCanvasViewport(userId, canvasId, left, top, width, height);
+        if(canvasVO == null){
+            return Result.error("画布不存在");
+        }
+        return Result.success(canvasVO);
+    }
+
+    /**
+     * 获取画布，响应带 ETag；请求的 If-None-Match 与当前版本一致时只查画布行，直接返回 304
+     */
     @GetMapping("/get/{canvasId}/{needUserId}")
-    public Result<CanvasVO> getCanvasById(@PathVariable long canvasId,@PathVariable int needUserId) {
+    public Result<CanvasVO> getCanvasById(@PathVariable long canvasId,@PathVariable int needUserId,
+                                          WebRequest webRequest, HttpServletResponse response) {
         // System.out.println("getCanvasById");
         
         long userId = BaseContext.getCurrentId();
@@ -120,7 +248,22 @@ public class CanvasController {
         else if(needUserId == 0){
             userId = -1;
         }
+        else{
+            // 主人读取时先写入自己排队中的保存，公开视图允许落后一个合并窗口
+            canvasAutosaveQueue.flush(canvasId);
+        }
+        String eTag = canvasService.getCanvasETag(userId, canvasId);
+        if(eTag != null){
+            // 主人视图因人而异，只允许客户端私有缓存，每次使用前都要重新验证
+            response.setHeader("Cache-Control", "private, no-cache");
+            if(webRequest.checkNotModified(eTag)){
+                return null;
+            }
+        }
         CanvasVO canvasVO = canvasService.getCanvasById(userId, canvasId);
+        if(canvasVO == null){
+            return Result.error("画布不存在");
+        }
         
         for(Heritage heritage:canvasVO.getHeritages()){
             System.out.println(heritage.getId());
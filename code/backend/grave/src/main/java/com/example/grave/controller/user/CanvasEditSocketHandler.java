@@ -0,0 +1,71 @@
+package com.example.grave.controller.user;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.example.grave.interceptor.CanvasEditHandshakeInterceptor;
+import com.example.grave.pojo.dto.CanvasOperation;
+import com.example.grave.service.impl.CanvasCollabService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 协同编辑消息入口，客户端发送单个操作或操作数组，
+ * 服务端按批广播 {"type":"ops","ops":[...]}，新组件落库后广播 {"type":"ids","ids":{临时ID: 组件ID}}
+ */
+@Component
+public class CanvasEditSocketHandler extends TextWebSocketHandler {
+
+    @Autowired
+    private CanvasCollabService canvasCollabService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws IOException {
+        if (!canvasCollabService.join(session, canvasId(session))) {
+            session.close(CloseStatus.GOING_AWAY.withReason("画布不存在"));
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message)
+            throws IOException {
+        long userId = (Long) session.getAttributes().get(CanvasEditHandshakeInterceptor.USER_ID);
+        CanvasOperation[] operations;
+        try {
+            JsonNode node = objectMapper.readTree(message.getPayload());
+            operations = node.isArray()
+                    ? objectMapper.treeToValue(node, CanvasOperation[].class)
+                    : new CanvasOperation[] {objectMapper.treeToValue(node, CanvasOperation.class)};
+        } catch (JsonProcessingException e) {
+            canvasCollabService.sendError(session, "消息格式错误");
+            return;
+        }
+        for (CanvasOperation operation : operations) {
+            String error = canvasCollabService.apply(canvasId(session), userId, operation);
+            if (error != null) {
+                canvasCollabService.sendError(session, error);
+            }
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus status) {
+        canvasCollabService.leave(session, canvasId(session));
+    }
+
+    private static long canvasId(WebSocketSession session) {
+        Map<String, Object> attributes = session.getAttributes();
+        return (Long) attributes.get(CanvasEditHandshakeInterceptor.CANVAS_ID);
+    }
+}
@@ -3,16 +3,23 @@ package com.example.grave.controller.user;
 import com.example.grave.common.result.Result;
 import com.example.grave.pojo.entity.Path;
 import com.example.grave.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 @RestController
 @CrossOrigin
 @RequestMapping("/api/upload")
 public class FileUploadController {
 
+    private static final Logger log = LoggerFactory.getLogger(FileUploadController.class);
+
     @Autowired
     private FileStorageService fileStorageService;
 
@@ -21,13 +28,38 @@ public class FileUploadController {
     public Result<Path> uploadImage(@RequestParam("file") MultipartFile file) {
         try {
             String fileUrl = fileStorageService.storeFile(file);
-            System.out.println("上传图片成功: " + fileUrl);
+            log.debug("上传图片成功: {}", fileUrl);
+            Path path = new Path();
+            path.setPath(fileUrl);
+            return Result.success(path);
+        } catch (Exception e) {
+            log.warn("图片上传失败", e);
+            return Result.error("图片上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 请求体即图片内容，Content-Type 为图片类型，直接从请求流写入磁盘，不经过 multipart 临时文件。
+     * 客户端可在 X-Content-SHA256 头中带上内容哈希，服务端已有该文件时不读取请求体直接返回
+     */
+    @PostMapping(value = "/image/raw", consumes = "image/*", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Result<Path> uploadImageRaw(HttpServletRequest request,
+                                       @RequestHeader(value = "X-Content-SHA256", required = false) String sha256) {
+        try {
+            String fileUrl = fileStorageService.findByHash(sha256);
+            if (fileUrl == null) {
+                try (InputStream in = request.getInputStream()) {
+                    fileUrl = fileStorageService.storeStream(in, request.getContentType());
+                }
+            }
+            log.debug("上传图片成功: {}", fileUrl);
             Path path = new Path();
             path.setPath(fileUrl);
             return Result.success(path);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("图片上传失败", e);
             return Result.error("图片上传失败：" + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package com.example.grave.controller.user;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.util.UrlPathHelper;
+
+import com.example.grave.service.impl.UploadFileServer;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 上传文件下载，/uploads/xxx.jpg?w=300 返回对应宽度的缩略图
+ */
+@Controller
+public class UploadFileController {
+
+    private static final String PREFIX = "/uploads/";
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    @Autowired
+    private UploadFileServer uploadFileServer;
+
+    @RequestMapping(value = "/uploads/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        uploadFileServer.serve(request, response, path.substring(PREFIX.length()));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.grave.interceptor;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+
+/**
+ * 协同编辑握手：从路径取画布ID，从 userId 参数或请求头取用户，
+ * 公开画布任何人可以旁观，私密画布只有作者可以连接
+ */
+@Component
+public class CanvasEditHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String CANVAS_ID = "canvasId";
+    public static final String USER_ID = "userId";
+
+    @Autowired
+    private CanvasService canvasService;
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+        String path = request.getURI().getPath();
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst(USER_ID);
+        if (token == null) {
+            token = request.getHeaders().getFirst(USER_ID);
+        }
+        long canvasId;
+        long userId;
+        try {
+            canvasId = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+            userId = token == null || token.equals("undefined") ? -1 : Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+        CanvasVO canvasVO = canvasService.getCanvasById(-1, canvasId);
+        if (canvasVO == null) {
+            response.setStatusCode(HttpStatus.NOT_FOUND);
+            return false;
+        }
+        if (canvasVO.getIsPublic() != 1 && canvasVO.getUserId() != userId) {
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return false;
+        }
+        attributes.put(CANVAS_ID, canvasId);
+        attributes.put(USER_ID, userId);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler, @Nullable Exception exception) {
+    }
+}
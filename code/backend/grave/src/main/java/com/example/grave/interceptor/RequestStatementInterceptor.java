@@ -0,0 +1,35 @@
+package com.example.grave.interceptor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 标记请求边界，供 {@link StatementMetricsInterceptor} 统计每个请求内的语句执行次数
+ */
+@Component
+public class RequestStatementInterceptor implements AsyncHandlerInterceptor {
+
+    @Autowired
+    private StatementMetricsInterceptor statementMetricsInterceptor;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        statementMetricsInterceptor.beginRequest();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        statementMetricsInterceptor.endRequest(request.getMethod(), request.getRequestURI());
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // 异步请求释放容器线程时先结算，异步分派回来后重新开始计数
+        statementMetricsInterceptor.endRequest(request.getMethod(), request.getRequestURI());
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.grave.interceptor;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * MyBatis 语句级指标插件
+ * 按语句（Mapper名.方法名）记录耗时分布、返回行数（更新语句为影响行数）以及每个 HTTP 请求内的执行次数；
+ * 同一请求内某条语句执行次数超过阈值时计数并记录警告日志，用于发现逐个遗产查询之类的 N+1 循环。
+ * 批量执行器中的更新只是加入批次，一次 executeBatch 才是一次往返，不计入执行次数。
+ * 请求边界由 {@link RequestStatementInterceptor} 标记，不在请求内的调用（后台线程）只记耗时和行数
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+                        BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+})
+public class StatementMetricsInterceptor implements Interceptor {
+    private static final Logger log = LoggerFactory.getLogger(StatementMetricsInterceptor.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mybatis.metrics.repeat-threshold:10}")
+    private int repeatThreshold;
+
+    // 语句ID -> 该语句的指标，避免每次调用都经过 MeterRegistry 查找
+    private final Map<String, StatementMeters> meters = new ConcurrentHashMap<>();
+    // 当前请求内各语句的执行次数，不在请求内时为 null
+    private final ThreadLocal<Map<StatementMeters, int[]>> requestCalls = new ThreadLocal<>();
+
+    private final class StatementMeters {
+        final String name;
+        final Timer latency;
+        final DistributionSummary rows;
+        final DistributionSummary callsPerRequest;
+        final Counter repeated;
+
+        StatementMeters(String name) {
+            this.name = name;
+            this.latency = Timer.builder("mybatis.statement.latency")
+                    .tag("statement", name)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry);
+            this.rows = DistributionSummary.builder("mybatis.statement.rows")
+                    .tag("statement", name)
+                    .register(meterRegistry);
+            this.callsPerRequest = DistributionSummary.builder("mybatis.statement.calls.per.request")
+                    .tag("statement", name)
+                    .register(meterRegistry);
+            this.repeated = Counter.builder("mybatis.statement.repeated.requests")
+                    .tag("statement", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        StatementMeters statementMeters = meters.get(statement.getId());
+        if (statementMeters == null) {
+            statementMeters = meters.computeIfAbsent(statement.getId(), id -> new StatementMeters(shortName(id)));
+        }
+        long start = System.nanoTime();
+        boolean batched = false;
+        try {
+            Object result = invocation.proceed();
+            batched = isBatched(result);
+            long rows = rows(result);
+            if (rows >= 0) {
+                statementMeters.rows.record(rows);
+            }
+            return result;
+        } finally {
+            Map<StatementMeters, int[]> calls = requestCalls.get();
+            if (calls != null && !batched) {
+                calls.computeIfAbsent(statementMeters, key -> new int[1])[0]++;
+            }
+            statementMeters.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 请求开始时调用，之后本线程上的语句计入该请求
+     */
+    public void beginRequest() {
+        requestCalls.set(new HashMap<>());
+    }
+
+    /**
+     * 请求结束时调用，记录每条语句的执行次数并检查重复执行
+     */
+    public void endRequest(String method, String path) {
+        Map<StatementMeters, int[]> calls = requestCalls.get();
+        if (calls == null) {
+            return;
+        }
+        requestCalls.remove();
+        for (Map.Entry<StatementMeters, int[]> entry : calls.entrySet()) {
+            StatementMeters statementMeters = entry.getKey();
+            int count = entry.getValue()[0];
+            statementMeters.callsPerRequest.record(count);
+            if (count > repeatThreshold) {
+                statementMeters.repeated.increment();
+                log.warn("疑似 N+1 查询: {} {} 中 {} 执行了 {} 次", method, path, statementMeters.name, count);
+            }
+        }
+    }
+
+    /**
+     * 批量执行器的 update 只把参数加入批次，返回固定的占位值
+     */
+    private static boolean isBatched(Object result) {
+        return result instanceof Integer count && count == BatchExecutor.BATCH_UPDATE_RETURN_VALUE;
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Integer count && count >= 0) {
+            return count;
+        }
+        // 游标的行数在读取时才确定，批量执行器的更新行数在 flushStatements 时才返回，都不记录
+        return -1;
+    }
+
+    /**
+     * com.example.grave.mapper.CanvasMapper.getHeritagesByPids -> CanvasMapper.getHeritagesByPids
+     */
+    private static String shortName(String id) {
+        int method = id.lastIndexOf('.');
+        int type = method > 0 ? id.lastIndexOf('.', method - 1) : -1;
+        return type >= 0 ? id.substring(type + 1) : id;
+    }
+}
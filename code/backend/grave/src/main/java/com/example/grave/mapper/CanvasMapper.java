@@ -1,5 +1,6 @@
 package com.example.grave.mapper;
 
+import java.util.Date;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Delete;
@@ -10,14 +11,19 @@ import org.apache.ibatis.annotations.Results;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.SelectKey;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
 
 import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
+import com.example.grave.pojo.entity.CanvasSnapshot;
 import com.example.grave.pojo.entity.Heritage;
 import com.example.grave.pojo.entity.HeritageItem;
 import com.example.grave.pojo.entity.ImageBox;
 import com.example.grave.pojo.entity.MarkdownBox;
 import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasSummaryVO;
 import com.example.grave.pojo.vo.CanvasVO;
 
 
@@ -67,18 +73,49 @@ public interface CanvasMapper {
     @Select("SELECT * FROM heritage_item WHERE heritage_id = #{heritageId}")
     public List<HeritageItem> getHeritageItems(long heritageId);
 
-    @Select("SELECT * FROM CanvasDTO WHERE isPublic = true ORDER BY RAND() LIMIT 20;")
-    @Results({
-    @Result(property = "id", column = "id"),
-    @Result(property = "userId", column = "uId")
-    // 根据需要添加其他字段映射
-    })
-    public List<CanvasDTO> loadCanvas();
+    /**
+     * 按ID分页扫描公开画布ID，用于构建内存采样索引
+     */
+    @Select("SELECT id FROM CanvasDTO WHERE isPublic = true AND id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Long> scanPublicCanvasIds(@Param("afterId") long afterId, @Param("limit") int limit);
 
     /**
-     * 获取所有遗产项
+     * 最新的若干公开画布ID，采样索引加载完成前代替随机抽样
      */
-    @Select("SELECT * FROM heritage_item WHERE heritage_id = #{heritageId}")
+    @Select("SELECT id FROM CanvasDTO WHERE isPublic = true ORDER BY id DESC LIMIT #{limit}")
+    List<Long> getLatestPublicCanvasIds(int limit);
+
+    /**
+     * 按ID分页扫描图片框的图片地址，用于清理无引用的上传文件
+     */
+    @Select("SELECT id, imageUrl FROM ImageBox WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<ImageBox> scanImageUrls(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 按ID分页扫描内容中含上传文件地址的文本、markdown 和遗产项，粘贴进正文的图片同样算作引用
+     */
+    @Select("SELECT id, content FROM TextBox WHERE id > #{afterId} AND content LIKE '%/uploads/%' " +
+            "ORDER BY id LIMIT #{limit}")
+    List<TextBox> scanTextsWithUploads(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Select("SELECT id, content FROM markdown WHERE id > #{afterId} AND content LIKE '%/uploads/%' " +
+            "ORDER BY id LIMIT #{limit}")
+    List<MarkdownBox> scanMarkdownsWithUploads(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Select("SELECT id, content FROM heritage_item WHERE id > #{afterId} AND content LIKE '%/uploads/%' " +
+            "ORDER BY id LIMIT #{limit}")
+    List<HeritageItem> scanHeritageItemsWithUploads(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 按ID批量获取公开画布
+     */
+    List<CanvasVO> getPublicCanvasesByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 获取所有遗产项，遗产未到公开时间时为空
+     */
+    @Select("SELECT hi.* FROM heritage_item hi JOIN heritage h ON hi.heritage_id = h.id " +
+            "WHERE hi.heritage_id = #{heritageId} AND h.released = true")
     List<HeritageItem> getAllHeritageItemsByHeritageId(Long heritageId);
 
     /**
@@ -96,8 +133,9 @@ public interface CanvasMapper {
     /**
      * 获取指定heritage_id下所有未被获得的私密遗产项
      */
-    @Select("SELECT * FROM heritage_item WHERE heritage_id = #{heritageId} " +
-            "AND is_private = true AND user_id = 0")
+    @Select("SELECT hi.* FROM heritage_item hi JOIN heritage h ON hi.heritage_id = h.id " +
+            "WHERE hi.heritage_id = #{heritageId} AND h.released = true " +
+            "AND hi.is_private = true AND hi.user_id = 0")
     List<HeritageItem> getUnclaimedPrivateHeritageItems(Long heritageId);
 
     /**
@@ -113,6 +151,14 @@ public interface CanvasMapper {
     @Select("SELECT * FROM CanvasDTO WHERE uId = #{userId}")
     List<CanvasVO> getCanvasList(Long userId);
 
+    /**
+     * 按ID倒序取用户画布摘要的一页，beforeId 为上一页最后一条的ID，走 (uId, id) 索引
+     */
+    @Select("SELECT id, title, isPublic FROM CanvasDTO WHERE uId = #{userId} AND id < #{beforeId} "
+            + "ORDER BY id DESC LIMIT #{limit}")
+    List<CanvasSummaryVO> getCanvasSummaries(@Param("userId") long userId, @Param("beforeId") long beforeId,
+            @Param("limit") int limit);
+
     /**
      * 删除画布
      */
@@ -123,7 +169,18 @@ public interface CanvasMapper {
      * 删除遗产
      */
     @Delete("DELETE FROM heritage WHERE pid = #{canvasId}")
-    List<Heritage> deleteHeritages(Long canvasId);
+    void deleteHeritages(Long canvasId);
+
+    /**
+     * 删除画布下所有遗产的遗产项
+     */
+    @Delete("DELETE FROM heritage_item WHERE heritage_id IN (SELECT id FROM heritage WHERE pid = #{canvasId})")
+    void deleteHeritageItemsByCanvas(Long canvasId);
+
+    /**
+     * 插入单个遗产项，批量执行器下多次调用合并为一批
+     */
+    void insertHeritageItem(HeritageItem item);
 
     /**
      * 删除遗产项
@@ -152,6 +209,9 @@ public interface CanvasMapper {
     /**
      * 获取画布
      */
+    @Results({
+        @Result(property = "userId", column = "uId")
+    })
     @Select("SELECT * FROM CanvasDTO WHERE id = #{canvasId} AND uId = #{userId}")
     CanvasVO getCanvasBy2Id(Long userId, Long canvasId);
 
@@ -163,4 +223,154 @@ public interface CanvasMapper {
     })
     @Select("SELECT * FROM CanvasDTO WHERE id = #{canvasId}")
     CanvasVO getCanvasById(Long canvasId);
+
+    /**
+     * 批量获取多个画布的图片
+     */
+    List<ImageBox> getImagesByPids(@Param("pids") List<Long> pids);
+
+    /**
+     * 批量获取多个画布的文本
+     */
+    List<TextBox> getTextsByPids(@Param("pids") List<Long> pids);
+
+    /**
+     * 批量获取多个画布的markdown
+     */
+    List<MarkdownBox> getMarkdownsByPids(@Param("pids") List<Long> pids);
+
+    /**
+     * 批量获取多个画布的遗产
+     */
+    List<Heritage> getHeritagesByPids(@Param("pids") List<Long> pids);
+
+    /**
+     * 批量获取多个遗产的遗产项
+     */
+    List<HeritageItem> getHeritageItemsByHeritageIds(@Param("heritageIds") List<Long> heritageIds);
+
+    /**
+     * 以游标逐行读取单个画布的组件，需在事务内使用并关闭
+     */
+    Cursor<ImageBox> streamImages(long pid);
+
+    Cursor<TextBox> streamTexts(long pid);
+
+    Cursor<MarkdownBox> streamMarkdowns(long pid);
+
+    Cursor<Heritage> streamHeritages(long pid);
+
+    Cursor<HeritageItem> streamHeritageItems(@Param("pid") long pid, @Param("releasedOnly") boolean releasedOnly);
+
+    /**
+     * 按 (public_time, id) 游标分页扫描未公开且公开时间不晚于 until 的遗产
+     */
+    List<Heritage> scanPendingReleases(@Param("until") Date until, @Param("afterTime") Date afterTime,
+            @Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 一批遗产中公开时间已到的，只取 id 和 pid
+     */
+    List<Heritage> getDueHeritages(@Param("ids") List<Long> ids, @Param("now") Date now);
+
+    /**
+     * 把一批遗产标记为已公开
+     */
+    int releaseHeritages(@Param("ids") List<Long> ids);
+
+    /**
+     * 获取画布所属用户ID
+     */
+    @Select("SELECT uId FROM CanvasDTO WHERE id = #{canvasId}")
+    Long getCanvasOwner(long canvasId);
+
+    /**
+     * 修改画布标题和公开状态，为空的字段不修改
+     */
+    void updateCanvasHeader(CanvasPatchDTO patch);
+
+    /**
+     * 批量新增组件并回填生成的ID
+     */
+    void insertImageBoxList(@Param("pid") long pid, @Param("boxes") List<ImageBox> boxes);
+    void insertTextBoxList(@Param("pid") long pid, @Param("boxes") List<TextBox> boxes);
+    void insertMarkdownList(@Param("pid") long pid, @Param("boxes") List<MarkdownBox> boxes);
+    void insertHeritageItemList(@Param("heritageId") long heritageId, @Param("items") List<HeritageItem> items);
+
+    /**
+     * 按组件ID修改组件，返回影响行数
+     */
+    int updateImageBox(@Param("pid") long pid, @Param("box") ImageBox box);
+    int updateTextBox(@Param("pid") long pid, @Param("box") TextBox box);
+    int updateMarkdown(@Param("pid") long pid, @Param("box") MarkdownBox box);
+    int updateHeritage(@Param("pid") long pid, @Param("box") Heritage box);
+
+    /**
+     * 按组件ID删除组件，返回影响行数（遗产项删除除外）
+     */
+    int deleteImageBoxesByIds(@Param("pid") long pid, @Param("ids") List<Long> ids);
+    int deleteTextBoxesByIds(@Param("pid") long pid, @Param("ids") List<Long> ids);
+    int deleteMarkdownsByIds(@Param("pid") long pid, @Param("ids") List<Long> ids);
+    void deleteHeritageItemsByHeritageIds(@Param("pid") long pid, @Param("ids") List<Long> ids);
+    int deleteHeritagesByIds(@Param("pid") long pid, @Param("ids") List<Long> ids);
+
+    /**
+     * 修改未被领取的遗产项，已被领取的不动，返回修改行数
+     */
+    @Update("UPDATE heritage_item SET content = #{item.content}, is_private = #{item.isPrivate} " +
+            "WHERE id = #{item.id} AND heritage_id = #{heritageId} AND user_id = 0")
+    int updateUnclaimedHeritageItem(@Param("heritageId") long heritageId, @Param("item") HeritageItem item);
+
+    /**
+     * 遗产项是否存在且内容与给定的一致，用于区分"未修改"与"已被领取无法修改"
+     */
+    @Select("SELECT COUNT(*) FROM heritage_item WHERE id = #{item.id} AND heritage_id = #{heritageId} " +
+            "AND content = #{item.content} AND is_private = #{item.isPrivate}")
+    int countSameHeritageItem(@Param("heritageId") long heritageId, @Param("item") HeritageItem item);
+
+    /**
+     * 画布中这些遗产项所属的遗产ID
+     */
+    List<Long> getHeritageIdsOfItems(@Param("pid") long pid, @Param("ids") List<Long> ids);
+
+    /**
+     * 删除画布中未被领取的遗产项，返回删除行数
+     */
+    int deleteUnclaimedHeritageItems(@Param("pid") long pid, @Param("ids") List<Long> ids);
+
+    /**
+     * 画布内容版本加一，与内容修改在同一事务中执行
+     */
+    @Update("UPDATE CanvasDTO SET version = version + 1 WHERE id = #{canvasId}")
+    void bumpCanvasVersion(long canvasId);
+
+    /**
+     * 获取画布的所属用户、公开状态、内容版本和领取计数，只读画布行，用于条件请求
+     */
+    @Select("SELECT id, uId AS userId, isPublic, version, claims FROM CanvasDTO WHERE id = #{canvasId}")
+    CanvasVO getCanvasVersion(long canvasId);
+
+    /**
+     * 一批遗产所在画布的内容版本加一
+     */
+    void bumpCanvasVersionsByHeritageIds(@Param("heritageIds") List<Long> heritageIds);
+
+    /**
+     * 一批遗产所在画布的领取计数加一
+     */
+    void bumpCanvasClaimsByHeritageIds(@Param("heritageIds") List<Long> heritageIds);
+
+    /**
+     * 按ID批量获取画布主信息及其快照，publicOnly 为 true 时只取公开画布
+     */
+    List<CanvasSnapshot> getCanvasSnapshots(@Param("ids") List<Long> ids, @Param("publicOnly") boolean publicOnly);
+
+    /**
+     * 写入快照，已有更新版本的快照时不覆盖
+     */
+    void saveCanvasSnapshot(@Param("canvasId") long canvasId, @Param("version") long version,
+            @Param("data") byte[] data);
+
+    @Delete("DELETE FROM canvas_snapshot WHERE canvas_id = #{canvasId}")
+    void deleteCanvasSnapshot(long canvasId);
 }
@@ -1,19 +1,35 @@
 package com.example.grave.mapper;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
-import com.example.grave.pojo.dto.UserRegisterDTO;
 import com.example.grave.pojo.entity.User;
 import com.example.grave.pojo.vo.UserVO;
 
 public interface UserMapper {
     @Insert("INSERT INTO user (username, password) VALUES (#{username}, #{password})")
-    public UserVO register(UserRegisterDTO userRegisterDTO);
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    public void register(User user);
 
     @Select("SELECT * FROM user WHERE username = #{username}")
     public UserVO getUserByUsername(String username);
-    
+
     @Select("SELECT * FROM user WHERE id = #{userId}")
     public UserVO getUserById(Long userId);
+
+    /**
+     * 用户总数，用于确定布隆过滤器容量
+     */
+    @Select("SELECT COUNT(*) FROM user")
+    long countUsers();
+
+    /**
+     * 按ID分页扫描用户名，用于构建布隆过滤器
+     */
+    @Select("SELECT id, username FROM user WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<User> scanUsernames(@Param("afterId") long afterId, @Param("limit") int limit);
 }
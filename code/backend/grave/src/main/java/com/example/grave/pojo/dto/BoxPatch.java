@@ -0,0 +1,15 @@
+package com.example.grave.pojo.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * 一类组件的增量修改，按组件ID定位
+ */
+@Data
+public class BoxPatch<T> {
+    private List<T> added;       // 新增的组件，保存后回填生成的ID
+    private List<T> updated;     // 修改的组件，必须带ID
+    private List<Long> removed;  // 删除的组件ID
+}
@@ -0,0 +1,24 @@
+package com.example.grave.pojo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+/**
+ * 协同编辑中的单个组件操作，客户端只需带上本次修改的字段
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CanvasOperation {
+    private String op;          // add / move / resize / edit / remove
+    private String boxType;     // image / text / markdown / heritage
+    private Long id;            // 组件ID，尚未落库的新组件为服务端分配的负数临时ID
+    private Long clientId;      // 新增时客户端自己的引用，广播时原样带回
+    private Integer left;
+    private Integer top;
+    private Integer width;
+    private Integer height;
+    private String content;     // 文本、markdown内容
+    private String imageUrl;    // 图片地址
+    private Long userId;        // 操作者，由服务端填写
+}
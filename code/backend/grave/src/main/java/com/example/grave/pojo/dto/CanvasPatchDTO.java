@@ -0,0 +1,25 @@
+package com.example.grave.pojo.dto;
+
+import java.util.List;
+
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+
+import lombok.Data;
+
+/**
+ * 画布增量保存请求，只携带本次编辑涉及的组件
+ */
+@Data
+public class CanvasPatchDTO {
+    private long id;
+    private String title;        // 为空表示不修改
+    private Integer isPublic;    // 为空表示不修改
+    private BoxPatch<ImageBox> images;
+    private BoxPatch<TextBox> texts;
+    private BoxPatch<MarkdownBox> markdowns;
+    private BoxPatch<Heritage> heritages;   // 修改的遗产中，无ID的遗产项为新增，有ID的为修改（已被领取的不能修改）
+    private List<Long> removedHeritageItems; // 删除的遗产项ID，已被领取的不能删除
+}
@@ -0,0 +1,18 @@
+package com.example.grave.pojo.entity;
+
+import lombok.Data;
+
+/**
+ * 画布主信息与快照行，snapshotVersion 与 version 不一致（或没有快照）时快照已过期
+ */
+@Data
+public class CanvasSnapshot {
+    private long id;
+    private long userId;
+    private String title;
+    private int isPublic;
+    private long version;
+    private long claims;
+    private Long snapshotVersion;
+    private byte[] data;
+}
@@ -10,6 +10,7 @@ public class Heritage {
     private Long id;
     private Long pid;          // 用户ID
     private Date publicTime;      // 公开时间
+    private Boolean released;     // 是否已到公开时间，未公开时遗产项只对画布主人可见
     private int left;  // 图片框的位置
     private int top;
     private int width;
@@ -0,0 +1,16 @@
+package com.example.grave.pojo.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 私密遗产领取结果，item 为空表示未领到
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HeritageClaimResult {
+    private String requestId;
+    private HeritageItem item;
+}
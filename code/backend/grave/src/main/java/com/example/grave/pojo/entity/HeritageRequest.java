@@ -1,30 +1,17 @@
-// package com.example.grave.pojo.entity;
+package com.example.grave.pojo.entity;
 
-// import lombok.AllArgsConstructor;
-// import lombok.Data;
-// import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 
-// @Data
-// @AllArgsConstructor
-// @NoArgsConstructor  // 添加无参构造函数，Kafka反序列化需要
-// public class HeritageRequest {
-//     private Long heritageId;
-//     private Long userId;
-    
-//     // Getter和Setter
-//     public Long getHeritageId() {
-//         return heritageId;
-//     }
-    
-//     public void setHeritageId(Long heritageId) {
-//         this.heritageId = heritageId;
-//     }
-    
-//     public Long getUserId() {
-//         return userId;
-//     }
-    
-//     public void setUserId(Long userId) {
-//         this.userId = userId;
-//     }
-// } 
\ No newline at end of file
+/**
+ * 私密遗产领取请求，按 heritageId 分区
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor  // 添加无参构造函数，Kafka反序列化需要
+public class HeritageRequest {
+    private String requestId;  // 用于把结果对应回等待中的请求
+    private Long heritageId;
+    private Long userId;
+}
@@ -0,0 +1,18 @@
+package com.example.grave.pojo.vo;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 画布列表的一页，nextCursor 为 null 表示没有下一页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CanvasPageVO {
+    private List<CanvasSummaryVO> items;
+    private Long nextCursor;
+}
@@ -0,0 +1,14 @@
+package com.example.grave.pojo.vo;
+
+import lombok.Data;
+
+/**
+ * 搜索结果项，snippet 为命中关键词附近的一段文字
+ */
+@Data
+public class CanvasSearchHitVO {
+    private long id;
+    private String title;
+    private String snippet;
+    private double score;
+}
@@ -0,0 +1,20 @@
+package com.example.grave.pojo.vo;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索结果的一页，按相关度倒序，total 为命中的画布总数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CanvasSearchPageVO {
+    private List<CanvasSearchHitVO> items;
+    private int total;
+    private int page;
+    private int size;
+}
@@ -0,0 +1,13 @@
+package com.example.grave.pojo.vo;
+
+import lombok.Data;
+
+/**
+ * 画布列表项，只含主页展示需要的字段
+ */
+@Data
+public class CanvasSummaryVO {
+    private long id;
+    private String title;
+    private int isPublic;
+}
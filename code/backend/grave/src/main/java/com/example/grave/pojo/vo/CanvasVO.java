@@ -22,6 +22,8 @@ public class CanvasVO implements Serializable {
     private long userId;
     private String title;
     private int isPublic;
+    private long version;      // 内容版本，每次修改画布内容时递增
+    private long claims;       // 遗产项被领取的批次数，只参与 ETag，不影响内容版本和快照
     private List<ImageBox> images;
     private List<TextBox> texts; 
     private List<Heritage> heritages;
@@ -1,18 +1,44 @@
 package com.example.grave.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
+import com.example.grave.pojo.vo.CanvasPageVO;
+import com.example.grave.pojo.vo.CanvasSearchPageVO;
 import com.example.grave.pojo.vo.CanvasVO;
 import com.example.grave.pojo.entity.HeritageItem;
 
 public interface CanvasService {
 
     public void saveCanvas(CanvasDTO canvasDTO,boolean justContent);
+
+    /**
+     * 用提交的内容整体替换已有画布的子组件
+     */
+    void replaceCanvas(CanvasDTO canvasDTO);
+
+    /**
+     * 画布组件被整体替换或删除（原组件ID全部失效）并提交后通知监听者，参数为画布ID
+     */
+    void addReplaceListener(LongConsumer listener);
     public CanvasVO getCanvas(int userId,int id);
     public List<CanvasVO> loadCanvas();
 
+    /**
+     * 以 NDJSON 逐个写出首页画布，每行一个画布
+     */
+    void streamFeed(OutputStream out) throws IOException;
+
+    /**
+     * 按关键词搜索公开画布的文本、markdown 和公开遗产内容，按相关度排序，page 从 0 开始
+     */
+    CanvasSearchPageVO searchCanvas(String keyword, int page, int size);
+
     /**
      * 获取非私密遗产内容
      */
@@ -28,6 +54,11 @@ public interface CanvasService {
      */
     List<CanvasVO> getCanvasList(Long userId);
 
+    /**
+     * 分页获取用户画布摘要，cursor 为上一页返回的 nextCursor，首页传 null
+     */
+    CanvasPageVO getCanvasPage(long userId, Long cursor, int size);
+
     /**
      * 删除画布
      */
@@ -37,4 +68,25 @@ public interface CanvasService {
      * 获取画布
      */
     CanvasVO getCanvasById(long userId,long canvasId);
+
+    /**
+     * 画布当前内容对应的 ETag，只查画布行不读组件；画布不存在或无权查看时返回 null。
+     * 主人视图与公开视图内容不同，ETag 也不同
+     */
+    String getCanvasETag(long userId, long canvasId);
+
+    /**
+     * 获取画布中与视口矩形相交的组件，权限规则与 getCanvasById 相同
+     */
+    CanvasVO getCanvasViewport(long userId, long canvasId, int left, int top, int width, int height);
+
+    /**
+     * 以 NDJSON 按组件逐行写出画布，画布不存在或不属于该用户时不写任何内容并返回 false
+     */
+    boolean streamCanvasById(long userId, long canvasId, OutputStream out) throws IOException;
+
+    /**
+     * 增量保存画布，返回回填了新组件ID的请求，画布不属于该用户时返回 null
+     */
+    CanvasPatchDTO patchCanvas(long userId, CanvasPatchDTO patch);
 } 
@@ -1,5 +1,7 @@
 package com.example.grave.service;
 
+import java.io.InputStream;
+
 import org.springframework.web.multipart.MultipartFile;
 
 public interface FileStorageService {
@@ -9,4 +11,19 @@ public interface FileStorageService {
      * @return 文件访问URL
      */
     String storeFile(MultipartFile file);
-} 
\ No newline at end of file
+
+    /**
+     * 边读取边计算 SHA-256 并写入磁盘，以内容哈希命名，相同内容只保存一份
+     * @param in 文件内容，读取完毕后由调用方关闭
+     * @param contentType 文件类型，必须是图片
+     * @return 文件访问URL
+     */
+    String storeStream(InputStream in, String contentType);
+
+    /**
+     * 按内容哈希查找已存储的文件
+     * @param sha256 十六进制的 SHA-256
+     * @return 文件访问URL，不存在时返回 null
+     */
+    String findByHash(String sha256);
+}
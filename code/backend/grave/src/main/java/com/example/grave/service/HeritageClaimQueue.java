@@ -0,0 +1,17 @@
+package com.example.grave.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.HeritageRequest;
+
+/**
+ * 私密遗产领取队列
+ * 同一个 heritageId 的请求总是由同一个消费者串行处理，结果返回后完成对应的 future
+ */
+public interface HeritageClaimQueue {
+    /**
+     * 提交领取请求，未领到时结果为 null，队列已满时以 503 异常结束
+     */
+    CompletableFuture<HeritageItem> submit(HeritageRequest request);
+}
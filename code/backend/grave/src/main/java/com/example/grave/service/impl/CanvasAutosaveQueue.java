@@ -0,0 +1,405 @@
+package com.example.grave.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 画布自动保存的写后队列
+ * canvas.autosave.write-behind=true 时，修改已有画布的整画布保存只记下每个画布最新的一份内容并立即返回；
+ * 同一画布 debounce-ms 内没有新的保存，或距第一份未落库的保存超过 max-delay-ms 时，后台线程只写入最新的一份。
+ * 每次提交先追加到本地预写日志（一行一个画布 JSON）再返回，落库或丢弃后追加一行 {"committed":画布ID}；
+ * 进程崩溃后启动时按日志恢复最后一行不是 committed 的画布，已落库的内容不会覆盖之后的增量保存、协同编辑和同步保存。
+ * 队列清空时截断日志，日志超过 wal-max-bytes 时按当前未落库的内容重写。
+ * 主人读取、增量保存、协同编辑打开画布前先写入该画布未落库的内容，删除画布时直接丢弃
+ */
+@Component
+public class CanvasAutosaveQueue implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CanvasAutosaveQueue.class);
+
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${canvas.autosave.write-behind:false}")
+    private boolean enabled;
+    @Value("${canvas.autosave.debounce-ms:1000}")
+    private long debounceMs;
+    @Value("${canvas.autosave.max-delay-ms:5000}")
+    private long maxDelayMs;
+    @Value("${canvas.autosave.max-pending:10000}")
+    private int maxPending;
+    @Value("${canvas.autosave.wal-dir:./autosave}")
+    private String walDir;
+    @Value("${canvas.autosave.wal-fsync:false}")
+    private boolean walFsync;
+    @Value("${canvas.autosave.wal-max-bytes:67108864}")
+    private long walMaxBytes;
+
+    private static final String WAL_FILE = "canvas-autosave.wal";
+    private static final String COMMITTED = "committed";
+    private static final long RETRY_DELAY_MS = 5000;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final class Pending {
+        final CanvasDTO canvas;
+        // 第一份未落库的保存时间，持续编辑时据此限制最长延迟
+        final long firstAt;
+        final long lastAt;
+        volatile long retryAt;
+
+        Pending(CanvasDTO canvas, long firstAt, long lastAt) {
+            this.canvas = canvas;
+            this.firstAt = firstAt;
+            this.lastAt = lastAt;
+        }
+    }
+
+    // 画布ID -> 最新一份未落库的内容
+    private final ConcurrentMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    // 同一画布的写入串行执行，避免较旧的一份晚于较新的一份提交
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // 追加日志与登记未落库内容在同一把锁内完成，截断、重写日志时两者一致
+    private final Object walLock = new Object();
+    private Path walPath;
+    private FileChannel wal;
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder direct = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+
+    public CanvasAutosaveQueue() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        walPath = Paths.get(walDir, WAL_FILE);
+        Files.createDirectories(walPath.getParent());
+        // 只把日志读回内存，落库交给后台线程，启动时数据库不可用也不影响
+        recover();
+        wal = openWal();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "canvas-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = Math.max(10, debounceMs / 4);
+        flusher.scheduleWithFixedDelay(() -> flushDue(false), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushDue(true);
+        synchronized (walLock) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.warn("关闭自动保存日志失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 提交一份整画布保存（画布已存在）。写后模式下写入日志后立即返回，
+     * 未开启、未落库的画布过多或日志写入失败时同步保存
+     */
+    public void submit(CanvasDTO canvasDTO) {
+        long canvasId = canvasDTO.getId();
+        if (enabled && (pending.size() < maxPending || pending.containsKey(canvasId))) {
+            try {
+                byte[] line = toLine(canvasDTO);
+                long now = System.currentTimeMillis();
+                synchronized (walLock) {
+                    append(line);
+                    // 保留第一份的时间，持续保存的画布不会被无限推迟
+                    Pending previous = pending.get(canvasId);
+                    pending.put(canvasId, new Pending(canvasDTO, previous == null ? now : previous.firstAt, now));
+                    if (previous != null) {
+                        coalesced.increment();
+                    }
+                }
+                submitted.increment();
+                return;
+            } catch (IOException e) {
+                log.warn("自动保存日志写入失败，改为同步保存: {}", e.getMessage());
+            }
+        }
+        direct.increment();
+        synchronized (lock(canvasId)) {
+            canvasService.replaceCanvas(canvasDTO);
+        }
+    }
+
+    /**
+     * 立即写入该画布未落库的内容，没有时直接返回
+     */
+    public void flush(long canvasId) {
+        if (pending.containsKey(canvasId)) {
+            persist(canvasId);
+        }
+    }
+
+    /**
+     * 当前未落库的画布内容，上传文件清理据此保留只在队列中引用的文件
+     */
+    public List<CanvasDTO> pendingCanvases() {
+        return pending.values().stream().map(value -> value.canvas).toList();
+    }
+
+    /**
+     * 画布删除前调用，丢弃未落库的内容
+     */
+    public void discard(long canvasId) {
+        synchronized (lock(canvasId)) {
+            Pending value = pending.get(canvasId);
+            if (value != null) {
+                commit(canvasId, value);
+            }
+        }
+    }
+
+    private void flushDue(boolean all) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+            Pending value = entry.getValue();
+            boolean due = now - value.lastAt >= debounceMs || now - value.firstAt >= maxDelayMs;
+            if (!all && (!due || now < value.retryAt)) {
+                continue;
+            }
+            try {
+                persist(entry.getKey());
+            } catch (RuntimeException e) {
+                // 保留在队列和日志中，稍后重试
+                failed.increment();
+                value.retryAt = now + RETRY_DELAY_MS;
+                log.warn("画布 {} 自动保存失败: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        // 读取时写入的画布也会清空队列，这里统一整理日志
+        compactWal();
+    }
+
+    private void persist(long canvasId) {
+        synchronized (lock(canvasId)) {
+            Pending value = pending.get(canvasId);
+            if (value == null) {
+                return;
+            }
+            // 排队期间画布可能已被删除；日志恢复的内容也在这里校验所属用户
+            CanvasVO header = canvasMapper.getCanvasVersion(canvasId);
+            if (header != null && header.getUserId() == value.canvas.getUserId()) {
+                canvasService.replaceCanvas(value.canvas);
+                written.increment();
+            } else {
+                dropped.increment();
+                log.warn("画布 {} 不存在或不属于提交者，丢弃未落库的自动保存", canvasId);
+            }
+            commit(canvasId, value);
+        }
+    }
+
+    /**
+     * 移出队列并追加 committed 行。与提交在同一把锁内：期间有新的提交时保留新的一份，
+     * 不写 committed，恢复时仍以新的一份为准
+     */
+    private void commit(long canvasId, Pending value) {
+        synchronized (walLock) {
+            if (!pending.remove(canvasId, value)) {
+                return;
+            }
+            try {
+                append(("{\"" + COMMITTED + "\":" + canvasId + "}\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // 日志仍是旧内容，下次截断或重写前崩溃会重放一次
+                log.warn("画布 {} 的自动保存落库记录写入失败: {}", canvasId, e.getMessage());
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        if (!Files.exists(walPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(walPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    if (node.has(COMMITTED)) {
+                        // 之前的内容已落库或已丢弃，重放会覆盖之后的保存
+                        pending.remove(node.get(COMMITTED).asLong());
+                        continue;
+                    }
+                    CanvasDTO canvasDTO = objectMapper.treeToValue(node, CanvasDTO.class);
+                    // 后出现的覆盖先出现的，时间记为 0，第一次调度即落库
+                    pending.put(canvasDTO.getId(), new Pending(canvasDTO, 0, 0));
+                } catch (JsonProcessingException e) {
+                    // 崩溃时最后一行可能只写了一半
+                    log.warn("跳过无法解析的自动保存日志: {}", e.getOriginalMessage());
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            recovered.add(pending.size());
+            log.info("从自动保存日志恢复了 {} 个画布的未落库内容", pending.size());
+        }
+    }
+
+    private void compactWal() {
+        synchronized (walLock) {
+            try {
+                if (wal.size() == 0) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    wal.truncate(0);
+                    return;
+                }
+                if (wal.size() <= walMaxBytes) {
+                    return;
+                }
+                Path tmp = walPath.resolveSibling(WAL_FILE + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    for (Pending value : pending.values()) {
+                        writeFully(out, toLine(value.canvas));
+                    }
+                    out.force(true);
+                }
+                wal.close();
+                Files.move(tmp, walPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                wal = openWal();
+            } catch (IOException e) {
+                log.warn("整理自动保存日志失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private FileChannel openWal() throws IOException {
+        return FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void append(byte[] line) throws IOException {
+        writeFully(wal, line);
+        if (walFsync) {
+            wal.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private byte[] toLine(CanvasDTO canvasDTO) throws JsonProcessingException {
+        // JSON 字符串中的换行会被转义，一份内容恰好一行
+        byte[] json = objectMapper.writeValueAsBytes(canvasDTO);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private Object lock(long canvasId) {
+        return locks[(int) (canvasId & (LOCK_STRIPES - 1))];
+    }
+
+    private double walBytes() {
+        synchronized (walLock) {
+            try {
+                return wal == null || !wal.isOpen() ? 0 : wal.size();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("canvas.autosave.submits", submitted, LongAdder::sum)
+                .tag("result", "queued").register(registry);
+        FunctionCounter.builder("canvas.autosave.submits", direct, LongAdder::sum)
+                .tag("result", "direct").register(registry);
+        FunctionCounter.builder("canvas.autosave.coalesced", coalesced, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.autosave.writes", written, LongAdder::sum)
+                .tag("result", "written").register(registry);
+        FunctionCounter.builder("canvas.autosave.writes", dropped, LongAdder::sum)
+                .tag("result", "dropped").register(registry);
+        FunctionCounter.builder("canvas.autosave.writes", failed, LongAdder::sum)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("canvas.autosave.recovered", recovered, LongAdder::sum).register(registry);
+        // 平均每次落库合并了多少次提交
+        Gauge.builder("canvas.autosave.coalescing.ratio", this,
+                        queue -> queue.submitted.sum() / (double) Math.max(1, queue.written.sum()))
+                .register(registry);
+        Gauge.builder("canvas.autosave.pending", pending, Map::size).register(registry);
+        Gauge.builder("canvas.autosave.wal.bytes", this, CanvasAutosaveQueue::walBytes).register(registry);
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.grave.service.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 画布读缓存
+ * 保存组装完成的 CanvasVO（含遗产项），按估算字节数做 LRU 淘汰，由保存、删除、领取遗产精确失效。
+ * 缓存中的对象是共享的，调用方只能读取不能修改
+ */
+@Component
+public class CanvasCache implements MeterBinder {
+
+    @Value("${canvas.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 遗产ID -> 所属画布ID，用于领取遗产后失效对应画布
+    private final Map<Long, Long> heritageOwners = new HashMap<>();
+    private long weight;
+    // 每次失效递增的逻辑时钟；加载前取得的戳早于该画布（或其中某个遗产）最近一次失效时，结果不写入缓存
+    private long clock;
+    // 最近失效的画布ID、遗产ID -> 失效时的时钟，按时钟先后排列，只保留最近 MAX_TRACKED 个
+    private final LinkedHashMap<Long, Long> invalidatedCanvases = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, Long> invalidatedHeritages = new LinkedHashMap<>();
+    // 被挤出记录的最大时钟，戳早于它的加载无法判断，一律不写入
+    private long floor;
+
+    private static final int MAX_TRACKED = 4096;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final CanvasVO canvasVO;
+        final long weight;
+
+        Entry(CanvasVO canvasVO, long weight) {
+            this.canvasVO = canvasVO;
+            this.weight = weight;
+        }
+    }
+
+    public synchronized CanvasVO get(long canvasId) {
+        Entry entry = entries.get(canvasId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.canvasVO;
+    }
+
+    /**
+     * 加载前获取的版本戳，写入时传回
+     */
+    public synchronized long stamp() {
+        return clock;
+    }
+
+    public synchronized void put(CanvasVO canvasVO, long stamp) {
+        if (canvasVO == null || stale(canvasVO, stamp)) {
+            return;
+        }
+        long size = estimate(canvasVO);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(canvasVO.getId(), new Entry(canvasVO, size));
+        if (previous != null) {
+            unlink(previous);
+        }
+        weight += size;
+        if (canvasVO.getHeritages() != null) {
+            for (Heritage heritage : canvasVO.getHeritages()) {
+                heritageOwners.put(heritage.getId(), canvasVO.getId());
+            }
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted);
+            evictions.increment();
+        }
+    }
+
+    public synchronized void invalidate(long canvasId) {
+        track(invalidatedCanvases, canvasId);
+        Entry removed = entries.remove(canvasId);
+        if (removed != null) {
+            unlink(removed);
+        }
+    }
+
+    /**
+     * 遗产项归属变化时，失效该遗产所在的画布；画布不在缓存中时也记下，正在加载、包含该遗产的画布不会写入旧内容
+     */
+    public synchronized void invalidateHeritage(long heritageId) {
+        track(invalidatedHeritages, heritageId);
+        Long canvasId = heritageOwners.get(heritageId);
+        if (canvasId != null) {
+            invalidate(canvasId);
+        }
+    }
+
+    private void track(LinkedHashMap<Long, Long> invalidated, long id) {
+        clock++;
+        // 先删后放，保持按时钟先后排列
+        invalidated.remove(id);
+        invalidated.put(id, clock);
+        if (invalidated.size() > MAX_TRACKED) {
+            Iterator<Long> eldest = invalidated.values().iterator();
+            floor = Math.max(floor, eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private boolean stale(CanvasVO canvasVO, long stamp) {
+        if (stamp < floor) {
+            return true;
+        }
+        Long invalidatedAt = invalidatedCanvases.get(canvasVO.getId());
+        if (invalidatedAt != null && invalidatedAt > stamp) {
+            return true;
+        }
+        if (canvasVO.getHeritages() != null && !invalidatedHeritages.isEmpty()) {
+            for (Heritage heritage : canvasVO.getHeritages()) {
+                invalidatedAt = invalidatedHeritages.get(heritage.getId());
+                if (invalidatedAt != null && invalidatedAt > stamp) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void unlink(Entry entry) {
+        weight -= entry.weight;
+        if (entry.canvasVO.getHeritages() != null) {
+            for (Heritage heritage : entry.canvasVO.getHeritages()) {
+                heritageOwners.remove(heritage.getId());
+            }
+        }
+    }
+
+    /**
+     * 粗略估算画布对象图占用的堆内存字节数
+     */
+    static long estimate(CanvasVO canvasVO) {
+        long size = 96 + chars(canvasVO.getTitle());
+        size += list(canvasVO.getImages());
+        size += list(canvasVO.getTexts());
+        size += list(canvasVO.getMarkdowns());
+        size += list(canvasVO.getHeritages());
+        if (canvasVO.getImages() != null) {
+            for (ImageBox image : canvasVO.getImages()) {
+                size += 64 + chars(image.getImageUrl());
+            }
+        }
+        if (canvasVO.getTexts() != null) {
+            for (TextBox text : canvasVO.getTexts()) {
+                size += 64 + chars(text.getContent());
+            }
+        }
+        if (canvasVO.getMarkdowns() != null) {
+            for (MarkdownBox markdown : canvasVO.getMarkdowns()) {
+                size += 64 + chars(markdown.getContent());
+            }
+        }
+        if (canvasVO.getHeritages() != null) {
+            for (Heritage heritage : canvasVO.getHeritages()) {
+                size += 80 + list(heritage.getItems());
+                if (heritage.getItems() != null) {
+                    for (HeritageItem item : heritage.getItems()) {
+                        size += 64 + chars(item.getContent());
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static long list(List<?> list) {
+        return list == null ? 0 : 40 + 8L * list.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("canvas.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("canvas.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("canvas.cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("canvas.cache.size", this, cache -> cache.size()).register(registry);
+        Gauge.builder("canvas.cache.weight.bytes", this, cache -> cache.weight()).register(registry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+}
@@ -0,0 +1,599 @@
+package com.example.grave.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import com.example.grave.pojo.dto.BoxPatch;
+import com.example.grave.pojo.dto.CanvasOperation;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 画布协同编辑
+ * 每个有人连接的画布对应一个房间，房间内保存组件的当前状态和尚未落库的修改。
+ * 操作先作用于内存状态，同一组件在一个广播窗口内的多次移动、缩放、编辑合并为最后一次，按批广播给房间内所有连接；
+ * 修改按固定间隔合成一次增量保存写入数据库，最后一个连接断开时立即写入。
+ * 画布被整体保存替换或增量保存失败时，房间丢弃未保存的修改、从数据库重新加载，并通知客户端重新拉取画布
+ */
+@Component
+public class CanvasCollabService implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CanvasCollabService.class);
+
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private HeritageReleaseScheduler heritageReleaseScheduler;
+    @Autowired
+    private CanvasAutosaveQueue canvasAutosaveQueue;
+
+    @Value("${canvas.collab.broadcast-interval-ms:50}")
+    private long broadcastIntervalMs;
+    @Value("${canvas.collab.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    private static final String SESSION_KEY = "collabSession";
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_LIMIT = 512 * 1024;
+
+    private final ConcurrentMap<Long, Room> rooms = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder broadcast = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    private record BoxKey(String type, long id) {
+    }
+
+    private static final class Room {
+        final long canvasId;
+        final long ownerId;
+        final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+        // 组件当前状态
+        final Map<BoxKey, Object> boxes = new HashMap<>();
+        // 尚未落库的修改
+        final Map<BoxKey, Object> added = new LinkedHashMap<>();
+        final Set<BoxKey> updated = new LinkedHashSet<>();
+        final Set<BoxKey> removed = new LinkedHashSet<>();
+        // 已落库的临时ID -> 组件ID，客户端收到映射前仍可能用临时ID
+        final Map<Long, Long> resolved = new HashMap<>();
+        // 待广播的操作，可合并的操作以 操作类型+组件 为键，后到的覆盖先到的
+        final LinkedHashMap<Object, CanvasOperation> outbound = new LinkedHashMap<>();
+        long nextTempId = -1;
+        long sequence;
+        boolean closed;
+
+        Room(long canvasId, long ownerId) {
+            this.canvasId = canvasId;
+            this.ownerId = ownerId;
+        }
+
+        boolean dirty() {
+            return !added.isEmpty() || !updated.isEmpty() || !removed.isEmpty();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "canvas-collab");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::broadcastAll, broadcastIntervalMs, broadcastIntervalMs,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        heritageReleaseScheduler.addListener(this::released);
+        canvasService.addReplaceListener(this::replaced);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    /**
+     * 加入画布房间，房间不存在时从画布当前内容创建；画布不存在时返回 false
+     */
+    public boolean join(WebSocketSession session, long canvasId) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS,
+                SEND_BUFFER_LIMIT);
+        session.getAttributes().put(SESSION_KEY, decorated);
+        while (true) {
+            Room room = rooms.computeIfAbsent(canvasId, this::open);
+            if (room == null) {
+                return false;
+            }
+            synchronized (room) {
+                // 房间恰好在最后一个连接断开时关闭，重新创建
+                if (room.closed) {
+                    continue;
+                }
+                room.sessions.add(decorated);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 离开房间，最后一个连接离开时写入未保存的修改并关闭房间
+     */
+    public void leave(WebSocketSession session, long canvasId) {
+        Object decorated = session.getAttributes().get(SESSION_KEY);
+        Room room = rooms.get(canvasId);
+        if (room == null || decorated == null) {
+            return;
+        }
+        synchronized (room) {
+            room.sessions.remove(decorated);
+            if (room.sessions.isEmpty() && !room.closed) {
+                try {
+                    flush(room);
+                } catch (RuntimeException e) {
+                    log.warn("画布 {} 协同编辑保存失败，未保存的修改已丢弃: {}", canvasId, e.getMessage());
+                }
+                room.closed = true;
+                rooms.remove(canvasId, room);
+            }
+        }
+    }
+
+    /**
+     * 把一个操作作用到房间状态上并排队广播，返回错误信息，成功时返回 null
+     */
+    public String apply(long canvasId, long userId, CanvasOperation operation) {
+        received.increment();
+        Room room = rooms.get(canvasId);
+        if (room == null) {
+            return "画布未打开";
+        }
+        String type = operation.getBoxType();
+        String op = operation.getOp();
+        if (type == null || op == null) {
+            return "缺少操作类型";
+        }
+        synchronized (room) {
+            if (userId != room.ownerId) {
+                return "只有画布作者可以编辑";
+            }
+            if (op.equals("add")) {
+                Object box = newBox(type);
+                if (box == null) {
+                    return type.equals("heritage") ? "遗产请通过保存接口添加" : "未知的组件类型";
+                }
+                BoxKey key = new BoxKey(type, room.nextTempId--);
+                applyFields(box, operation);
+                room.boxes.put(key, box);
+                room.added.put(key, box);
+                operation.setId(key.id());
+                enqueue(room, "#" + room.sequence++, operation, userId);
+                return null;
+            }
+
+            Long id = operation.getId();
+            if (id == null) {
+                return "缺少组件ID";
+            }
+            id = room.resolved.getOrDefault(id, id);
+            operation.setId(id);
+            BoxKey key = new BoxKey(type, id);
+            Object box = room.boxes.get(key);
+            if (box == null) {
+                return "组件不存在";
+            }
+            switch (op) {
+                case "move":
+                case "resize":
+                case "edit":
+                    applyFields(box, operation);
+                    if (!room.added.containsKey(key)) {
+                        room.updated.add(key);
+                    }
+                    enqueue(room, op + key, operation, userId);
+                    return null;
+                case "remove":
+                    room.boxes.remove(key);
+                    if (room.added.remove(key) == null) {
+                        room.updated.remove(key);
+                        room.removed.add(key);
+                    }
+                    enqueue(room, "#" + room.sequence++, operation, userId);
+                    return null;
+                default:
+                    return "未知的操作 " + op;
+            }
+        }
+    }
+
+    /**
+     * 在房间的锁内逐个访问各房间的组件当前状态，包括尚未落库的新增和修改，上传文件清理据此保留只在房间中引用的文件
+     */
+    public void forEachBox(Consumer<Object> action) {
+        for (Room room : rooms.values()) {
+            synchronized (room) {
+                room.boxes.values().forEach(action);
+            }
+        }
+    }
+
+    public void sendError(WebSocketSession session, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("type", "error");
+        error.put("msg", message);
+        Object decorated = session.getAttributes().get(SESSION_KEY);
+        send(decorated instanceof WebSocketSession target ? target : session, toJson(error));
+    }
+
+    private Room open(long canvasId) {
+        // 房间以数据库内容为起点，先写入排队中的整画布保存
+        canvasAutosaveQueue.flush(canvasId);
+        CanvasVO canvasVO = canvasService.getCanvasById(-1, canvasId);
+        if (canvasVO == null) {
+            return null;
+        }
+        Room room = new Room(canvasId, canvasVO.getUserId());
+        fill(room, canvasVO);
+        return room;
+    }
+
+    private void fill(Room room, CanvasVO canvasVO) {
+        // 缓存中的画布对象是共享的，复制一份作为房间状态
+        for (ImageBox image : canvasVO.getImages()) {
+            room.boxes.put(new BoxKey("image", image.getId()), objectMapper.convertValue(image, ImageBox.class));
+        }
+        for (TextBox text : canvasVO.getTexts()) {
+            room.boxes.put(new BoxKey("text", text.getId()), objectMapper.convertValue(text, TextBox.class));
+        }
+        for (MarkdownBox markdown : canvasVO.getMarkdowns()) {
+            room.boxes.put(new BoxKey("markdown", markdown.getId()),
+                    objectMapper.convertValue(markdown, MarkdownBox.class));
+        }
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            Heritage copy = objectMapper.convertValue(heritage, Heritage.class);
+            // 遗产项不随协同编辑修改
+            copy.setItems(null);
+            room.boxes.put(new BoxKey("heritage", heritage.getId()), copy);
+        }
+    }
+
+    /**
+     * 画布被整体保存或清空后组件ID全部变化，房间重新加载
+     */
+    private void replaced(long canvasId) {
+        Room room = rooms.get(canvasId);
+        if (room == null) {
+            return;
+        }
+        synchronized (room) {
+            if (!room.closed) {
+                resync(room);
+            }
+        }
+    }
+
+    /**
+     * 丢弃未保存的修改和待广播的操作，从数据库重新加载组件，通知客户端重新拉取画布；画布已删除时断开所有连接
+     */
+    private void resync(Room room) {
+        resyncs.increment();
+        room.added.clear();
+        room.updated.clear();
+        room.removed.clear();
+        room.outbound.clear();
+        room.resolved.clear();
+        room.boxes.clear();
+        CanvasVO canvasVO = canvasService.getCanvasById(-1, room.canvasId);
+        if (canvasVO == null) {
+            closeAll(room, "画布不存在");
+            return;
+        }
+        fill(room, canvasVO);
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "reload");
+        sendAll(room, toJson(message));
+    }
+
+    private static void closeAll(Room room, String reason) {
+        for (WebSocketSession session : room.sessions) {
+            try {
+                session.close(CloseStatus.GOING_AWAY.withReason(reason));
+            } catch (IOException e) {
+                // 连接已断开
+            }
+        }
+    }
+
+    /**
+     * 遗产到达公开时间，通知正在查看该画布的连接，客户端收到后重新拉取遗产项
+     */
+    private void released(long canvasId, List<Long> heritageIds) {
+        Room room = rooms.get(canvasId);
+        if (room == null) {
+            return;
+        }
+        synchronized (room) {
+            if (room.closed) {
+                return;
+            }
+            for (Long heritageId : heritageIds) {
+                if (room.boxes.get(new BoxKey("heritage", heritageId)) instanceof Heritage heritage) {
+                    heritage.setReleased(true);
+                }
+            }
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "released");
+            message.put("heritageIds", heritageIds);
+            sendAll(room, toJson(message));
+        }
+    }
+
+    private static void enqueue(Room room, Object key, CanvasOperation operation, long userId) {
+        operation.setUserId(userId);
+        room.outbound.put(key, operation);
+    }
+
+    private void broadcastAll() {
+        for (Room room : rooms.values()) {
+            try {
+                synchronized (room) {
+                    broadcast(room);
+                }
+            } catch (RuntimeException e) {
+                log.warn("画布 {} 协同编辑广播失败: {}", room.canvasId, e.getMessage());
+            }
+        }
+    }
+
+    private void broadcast(Room room) {
+        if (room.outbound.isEmpty()) {
+            return;
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "ops");
+        message.put("ops", new ArrayList<>(room.outbound.values()));
+        broadcast.add(room.outbound.size());
+        room.outbound.clear();
+        sendAll(room, toJson(message));
+    }
+
+    private void flushAll() {
+        for (Room room : rooms.values()) {
+            synchronized (room) {
+                try {
+                    flush(room);
+                } catch (RuntimeException e) {
+                    // 增量整体回滚；组件可能已被整体保存替换，以数据库为准重新同步
+                    log.warn("画布 {} 协同编辑保存失败，重新加载: {}", room.canvasId, e.getMessage());
+                    try {
+                        resync(room);
+                    } catch (RuntimeException reloadFailure) {
+                        log.warn("画布 {} 协同编辑重新加载失败: {}", room.canvasId, reloadFailure.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把房间内未保存的修改合成一次增量保存，新组件落库后把临时ID映射广播出去
+     */
+    private void flush(Room room) {
+        if (!room.dirty()) {
+            return;
+        }
+        CanvasPatchDTO patch = new CanvasPatchDTO();
+        patch.setId(room.canvasId);
+        patch.setImages(boxPatch(room, "image"));
+        patch.setTexts(boxPatch(room, "text"));
+        patch.setMarkdowns(boxPatch(room, "markdown"));
+        patch.setHeritages(boxPatch(room, "heritage"));
+        CanvasPatchDTO saved = canvasService.patchCanvas(room.ownerId, patch);
+        flushes.increment();
+        if (saved == null) {
+            // 画布已被删除，丢弃修改并断开所有连接
+            room.added.clear();
+            room.updated.clear();
+            room.removed.clear();
+            closeAll(room, "画布不存在");
+            return;
+        }
+
+        Map<Long, Long> ids = new LinkedHashMap<>();
+        for (Map.Entry<BoxKey, Object> entry : room.added.entrySet()) {
+            BoxKey tempKey = entry.getKey();
+            Long id = boxId(entry.getValue());
+            if (id == null) {
+                continue;
+            }
+            room.boxes.remove(tempKey);
+            room.boxes.put(new BoxKey(tempKey.type(), id), entry.getValue());
+            room.resolved.put(tempKey.id(), id);
+            ids.put(tempKey.id(), id);
+        }
+        room.added.clear();
+        room.updated.clear();
+        room.removed.clear();
+        // 先发出仍带临时ID的操作，再发ID映射
+        broadcast(room);
+        if (!ids.isEmpty()) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "ids");
+            message.put("ids", ids);
+            sendAll(room, toJson(message));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BoxPatch<T> boxPatch(Room room, String type) {
+        List<T> added = new ArrayList<>();
+        List<T> updated = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        for (Map.Entry<BoxKey, Object> entry : room.added.entrySet()) {
+            if (entry.getKey().type().equals(type)) {
+                added.add((T) entry.getValue());
+            }
+        }
+        for (BoxKey key : room.updated) {
+            if (key.type().equals(type)) {
+                updated.add((T) room.boxes.get(key));
+            }
+        }
+        for (BoxKey key : room.removed) {
+            if (key.type().equals(type)) {
+                removed.add(key.id());
+            }
+        }
+        if (added.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+        BoxPatch<T> patch = new BoxPatch<>();
+        patch.setAdded(added);
+        patch.setUpdated(updated);
+        patch.setRemoved(removed);
+        return patch;
+    }
+
+    private static Object newBox(String type) {
+        switch (type) {
+            case "image":
+                return new ImageBox();
+            case "text":
+                return new TextBox();
+            case "markdown":
+                return new MarkdownBox();
+            default:
+                return null;
+        }
+    }
+
+    private static Long boxId(Object box) {
+        if (box instanceof ImageBox image) {
+            return image.getId();
+        } else if (box instanceof TextBox text) {
+            return text.getId();
+        } else if (box instanceof MarkdownBox markdown) {
+            return markdown.getId();
+        } else if (box instanceof Heritage heritage) {
+            return heritage.getId();
+        }
+        return null;
+    }
+
+    /**
+     * 只修改操作中带了的字段
+     */
+    private static void applyFields(Object box, CanvasOperation operation) {
+        Integer left = operation.getLeft();
+        Integer top = operation.getTop();
+        Integer width = operation.getWidth();
+        Integer height = operation.getHeight();
+        if (box instanceof ImageBox image) {
+            if (left != null) image.setLeft(left);
+            if (top != null) image.setTop(top);
+            if (width != null) image.setWidth(width);
+            if (height != null) image.setHeight(height);
+            if (operation.getImageUrl() != null) image.setImageUrl(operation.getImageUrl());
+        } else if (box instanceof TextBox text) {
+            if (left != null) text.setLeft(left);
+            if (top != null) text.setTop(top);
+            if (width != null) text.setWidth(width);
+            if (height != null) text.setHeight(height);
+            if (operation.getContent() != null) text.setContent(operation.getContent());
+        } else if (box instanceof MarkdownBox markdown) {
+            if (left != null) markdown.setLeft(left);
+            if (top != null) markdown.setTop(top);
+            if (width != null) markdown.setWidth(width);
+            if (height != null) markdown.setHeight(height);
+            if (operation.getContent() != null) markdown.setContent(operation.getContent());
+        } else if (box instanceof Heritage heritage) {
+            if (left != null) heritage.setLeft(left);
+            if (top != null) heritage.setTop(top);
+            if (width != null) heritage.setWidth(width);
+            if (height != null) heritage.setHeight(height);
+        }
+    }
+
+    private void sendAll(Room room, String payload) {
+        for (WebSocketSession session : room.sessions) {
+            send(session, payload);
+        }
+    }
+
+    private static void send(WebSocketSession session, String payload) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.sendMessage(new TextMessage(payload));
+        } catch (IOException | RuntimeException e) {
+            // 发送超时或缓冲区溢出时装饰器会关闭连接，之后由 leave 清理
+            log.debug("协同编辑消息发送失败: {}", e.getMessage());
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("canvas.collab.rooms", rooms, Map::size).register(registry);
+        FunctionCounter.builder("canvas.collab.operations", received, LongAdder::sum)
+                .tag("stage", "received").register(registry);
+        FunctionCounter.builder("canvas.collab.operations", broadcast, LongAdder::sum)
+                .tag("stage", "broadcast").register(registry);
+        FunctionCounter.builder("canvas.collab.flushes", flushes, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.collab.resyncs", resyncs, LongAdder::sum).register(registry);
+    }
+}
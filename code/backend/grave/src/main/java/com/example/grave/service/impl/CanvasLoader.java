@@ -0,0 +1,97 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+/**
+ * 画布聚合加载器
+ * 不论画布数量和组件数量多少，子组件都只用固定几条 IN 查询取回，再在内存中按 pid 拼装
+ */
+@Component
+public class CanvasLoader {
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+
+    /**
+     * 为单个画布填充全部子组件
+     */
+    public CanvasVO fill(CanvasVO canvasVO, boolean withItems) {
+        if (canvasVO != null) {
+            fill(Collections.singletonList(canvasVO), withItems);
+        }
+        return canvasVO;
+    }
+
+    /**
+     * 为一批画布填充图片、文本、markdown、遗产，withItems 为 true 时同时加载遗产项
+     */
+    public List<CanvasVO> fill(List<CanvasVO> canvasVOs, boolean withItems) {
+        if (canvasVOs == null || canvasVOs.isEmpty()) {
+            return canvasVOs;
+        }
+        List<Long> pids = new ArrayList<>(canvasVOs.size());
+        for (CanvasVO canvasVO : canvasVOs) {
+            pids.add(canvasVO.getId());
+        }
+
+        Map<Long, List<ImageBox>> images = groupBy(canvasMapper.getImagesByPids(pids), ImageBox::getPid);
+        Map<Long, List<TextBox>> texts = groupBy(canvasMapper.getTextsByPids(pids), TextBox::getPid);
+        Map<Long, List<MarkdownBox>> markdowns = groupBy(canvasMapper.getMarkdownsByPids(pids), MarkdownBox::getPid);
+        List<Heritage> heritageList = canvasMapper.getHeritagesByPids(pids);
+        if (withItems) {
+            fillItems(heritageList);
+        }
+        Map<Long, List<Heritage>> heritages = groupBy(heritageList, Heritage::getPid);
+
+        for (CanvasVO canvasVO : canvasVOs) {
+            long id = canvasVO.getId();
+            canvasVO.setImages(images.getOrDefault(id, new ArrayList<>()));
+            canvasVO.setTexts(texts.getOrDefault(id, new ArrayList<>()));
+            canvasVO.setMarkdowns(markdowns.getOrDefault(id, new ArrayList<>()));
+            canvasVO.setHeritages(heritages.getOrDefault(id, new ArrayList<>()));
+        }
+        return canvasVOs;
+    }
+
+    /**
+     * 一次查询为一批遗产填充遗产项
+     */
+    public void fillItems(List<Heritage> heritages) {
+        if (heritages == null || heritages.isEmpty()) {
+            return;
+        }
+        List<Long> heritageIds = new ArrayList<>(heritages.size());
+        for (Heritage heritage : heritages) {
+            heritageIds.add(heritage.getId());
+        }
+        Map<Long, List<HeritageItem>> items = groupBy(
+                canvasMapper.getHeritageItemsByHeritageIds(heritageIds), HeritageItem::getHeritageId);
+        for (Heritage heritage : heritages) {
+            heritage.setItems(items.getOrDefault(heritage.getId(), new ArrayList<>()));
+        }
+    }
+
+    private static <T> Map<Long, List<T>> groupBy(List<T> rows, Function<T, Long> key) {
+        Map<Long, List<T>> grouped = new HashMap<>();
+        for (T row : rows) {
+            grouped.computeIfAbsent(key.apply(row), k -> new ArrayList<>()).add(row);
+        }
+        return grouped;
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasSearchHitVO;
+import com.example.grave.pojo.vo.CanvasSearchPageVO;
+import com.example.grave.pojo.vo.CanvasVO;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 公开画布的进程内倒排索引
+ * 索引标题、文本框、markdown 以及已公开遗产中的非私密遗产项。中日韩文字按单字和相邻两字切分，
+ * 其他文字按字母数字连续段切分并转小写；查询词全部命中才算命中，按 BM25 排序。
+ * 首次搜索时从数据库分页构建；之后保存、修改、删除画布和遗产公开只记下画布ID，
+ * 由后台线程按固定间隔批量重新加载这些画布并更新索引，写路径不增加查询。
+ * 文档号只增不减，倒排表天然有序；画布更新时旧文档只打删除标记，删除过多时整体压缩
+ */
+@Component
+public class CanvasSearchIndex implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CanvasSearchIndex.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private CanvasLoader canvasLoader;
+    @Autowired
+    private HeritageReleaseScheduler heritageReleaseScheduler;
+
+    @Value("${canvas.search.refresh-interval-ms:1000}")
+    private long refreshIntervalMs;
+    @Value("${canvas.search.snippet-chars:80}")
+    private int snippetChars;
+    // 每个画布保存用于生成摘要的文字上限，索引本身不受此限制
+    @Value("${canvas.search.stored-chars:2000}")
+    private int storedChars;
+
+    private static final int SCAN_PAGE_SIZE = 500;
+    // 深分页只允许到前 MAX_RESULTS 条
+    private static final int MAX_RESULTS = 1000;
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();
+    // 文档号 -> 画布ID、标题、摘要原文、词数
+    private long[] canvasIds = new long[1024];
+    private String[] titles = new String[1024];
+    private String[] texts = new String[1024];
+    private int[] lengths = new int[1024];
+    private int docCount;
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    private long totalLength;
+    // 画布ID -> 当前文档号
+    private final PublicCanvasIndex.LongIntMap docs = new PublicCanvasIndex.LongIntMap();
+
+    private final Object loadLock = new Object();
+    private volatile boolean loadStarted;
+    private volatile boolean loaded;
+    // 已变更、等待重新索引的画布
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+
+    /**
+     * 一个词的倒排表：按文档号递增的文档号与词频
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+
+        /**
+         * 从 from 开始找第一个不小于 doc 的位置，先倍增步长再二分
+         */
+        int advance(int from, int doc) {
+            int bound = 1;
+            int low = from;
+            while (low + bound < size && docs[low + bound] < doc) {
+                low += bound;
+                bound <<= 1;
+            }
+            int high = Math.min(size, low + bound + 1);
+            int index = Arrays.binarySearch(docs, low, high, doc);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    private record Hit(int doc, double score) {
+    }
+
+    @PostConstruct
+    public void init() {
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "canvas-search-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        // 遗产到期公开后遗产项变为可搜索
+        heritageReleaseScheduler.addListener((canvasId, heritageIds) -> changed(canvasId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 画布内容或公开状态变更并提交后调用，由后台线程重新索引
+     */
+    public void changed(long canvasId) {
+        if (loadStarted) {
+            dirty.add(canvasId);
+        }
+    }
+
+    /**
+     * 画布删除并提交后调用，立即从结果中去掉；
+     * 同时记为变更，后台线程若在删除前读到了旧内容并写回，下一轮会再次去掉
+     */
+    public void removed(long canvasId) {
+        if (!loadStarted) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(canvasId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        dirty.add(canvasId);
+    }
+
+    /**
+     * 按关键词搜索公开画布，page 从 0 开始
+     */
+    public CanvasSearchPageVO search(String keyword, int page, int size) {
+        ensureLoaded();
+        queries.increment();
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokens(keyword, true)));
+        int offset = page * size;
+        if (queryTerms.isEmpty() || offset >= MAX_RESULTS) {
+            return new CanvasSearchPageVO(new ArrayList<>(), 0, page, size);
+        }
+        lock.readLock().lock();
+        try {
+            Postings[] postings = new Postings[queryTerms.size()];
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = terms.get(queryTerms.get(i));
+                if (postings[i] == null) {
+                    return new CanvasSearchPageVO(new ArrayList<>(), 0, page, size);
+                }
+            }
+            // 从最短的倒排表开始求交集
+            Arrays.sort(postings, (a, b) -> Integer.compare(a.size, b.size));
+            int liveDocs = docCount - deletedCount;
+            double avgLength = liveDocs == 0 ? 1 : Math.max(1, (double) totalLength / liveDocs);
+            double[] idf = new double[postings.length];
+            for (int i = 0; i < postings.length; i++) {
+                // 倒排表中可能还有未压缩的已删除文档，文档频率不超过现有文档数
+                int df = Math.min(postings[i].size, liveDocs);
+                idf[i] = Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+            }
+
+            int keep = Math.min(offset + size, MAX_RESULTS);
+            PriorityQueue<Hit> top = new PriorityQueue<>(keep + 1, (a, b) -> Double.compare(a.score, b.score));
+            int[] cursors = new int[postings.length];
+            int total = 0;
+            Postings rarest = postings[0];
+            candidates:
+            for (int i = 0; i < rarest.size; i++) {
+                int doc = rarest.docs[i];
+                if (deleted.get(doc)) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                double score = idf[0] * rarest.freqs[i] * (K1 + 1) / (rarest.freqs[i] + norm);
+                for (int t = 1; t < postings.length; t++) {
+                    Postings other = postings[t];
+                    int cursor = other.advance(cursors[t], doc);
+                    cursors[t] = cursor;
+                    if (cursor >= other.size) {
+                        break candidates;
+                    }
+                    if (other.docs[cursor] != doc) {
+                        continue candidates;
+                    }
+                    score += idf[t] * other.freqs[cursor] * (K1 + 1) / (other.freqs[cursor] + norm);
+                }
+                total++;
+                if (top.size() < keep) {
+                    top.add(new Hit(doc, score));
+                } else if (score > top.peek().score) {
+                    top.poll();
+                    top.add(new Hit(doc, score));
+                }
+            }
+
+            Hit[] ranked = top.toArray(new Hit[0]);
+            Arrays.sort(ranked, (a, b) -> Double.compare(b.score, a.score));
+            List<CanvasSearchHitVO> items = new ArrayList<>();
+            for (int i = offset; i < ranked.length; i++) {
+                CanvasSearchHitVO hit = new CanvasSearchHitVO();
+                hit.setId(canvasIds[ranked[i].doc]);
+                hit.setTitle(titles[ranked[i].doc]);
+                hit.setSnippet(snippet(texts[ranked[i].doc], queryTerms));
+                hit.setScore(ranked[i].score);
+                items.add(hit);
+            }
+            return new CanvasSearchPageVO(items, total, page, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            // 先开始记录变更再扫描，扫描期间提交的修改由后台线程补上
+            loadStarted = true;
+            dirty.clear();
+            long afterId = 0;
+            List<Long> page;
+            do {
+                page = canvasMapper.scanPublicCanvasIds(afterId, SCAN_PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1);
+                reindex(page);
+            } while (page.size() == SCAN_PAGE_SIZE);
+            loaded = true;
+            log.info("画布搜索索引加载完成，共 {} 个画布，{} 个词", docCount - deletedCount, terms.size());
+        }
+    }
+
+    private void refresh() {
+        if (!loaded || dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            for (int from = 0; from < ids.size(); from += SCAN_PAGE_SIZE) {
+                reindex(ids.subList(from, Math.min(ids.size(), from + SCAN_PAGE_SIZE)));
+            }
+            refreshed.add(ids.size());
+        } catch (RuntimeException e) {
+            // 留到下一轮重试
+            dirty.addAll(ids);
+            log.warn("画布搜索索引更新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载一批画布并替换索引中的文档，已删除或转为私密的画布不会被查出，只删除旧文档
+     */
+    private void reindex(List<Long> ids) {
+        List<CanvasVO> canvases = canvasLoader.fill(canvasMapper.getPublicCanvasesByIds(ids), true);
+        // 分词在锁外完成
+        List<Map<String, int[]>> frequencies = new ArrayList<>(canvases.size());
+        List<String> stored = new ArrayList<>(canvases.size());
+        for (CanvasVO canvasVO : canvases) {
+            StringBuilder text = new StringBuilder();
+            appendSearchableText(canvasVO, text);
+            Map<String, int[]> frequency = new HashMap<>();
+            tokenize(canvasVO.getTitle(), false, term -> frequency.computeIfAbsent(term, key -> new int[1])[0]++);
+            tokenize(text, false, term -> frequency.computeIfAbsent(term, key -> new int[1])[0]++);
+            frequencies.add(frequency);
+            stored.add(text.length() > storedChars ? text.substring(0, storedChars) : text.toString());
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long id : ids) {
+                remove(id);
+            }
+            for (int i = 0; i < canvases.size(); i++) {
+                add(canvases.get(i), frequencies.get(i), stored.get(i));
+            }
+            if (deletedCount > 1024 && deletedCount * 2 > docCount) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 可搜索的文字：文本框、markdown、已公开遗产中的非私密遗产项，各段以换行分隔
+     */
+    private static void appendSearchableText(CanvasVO canvasVO, StringBuilder text) {
+        if (canvasVO.getTexts() != null) {
+            for (TextBox textBox : canvasVO.getTexts()) {
+                appendLine(text, textBox.getContent());
+            }
+        }
+        if (canvasVO.getMarkdowns() != null) {
+            for (MarkdownBox markdown : canvasVO.getMarkdowns()) {
+                appendLine(text, markdown.getContent());
+            }
+        }
+        if (canvasVO.getHeritages() != null) {
+            for (Heritage heritage : canvasVO.getHeritages()) {
+                if (Boolean.FALSE.equals(heritage.getReleased()) || heritage.getItems() == null) {
+                    continue;
+                }
+                for (HeritageItem item : heritage.getItems()) {
+                    if (!Boolean.TRUE.equals(item.getIsPrivate())) {
+                        appendLine(text, item.getContent());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void appendLine(StringBuilder text, String content) {
+        if (content == null || content.isBlank()) {
+            return;
+        }
+        if (text.length() > 0) {
+            text.append('\n');
+        }
+        text.append(content);
+    }
+
+    private void add(CanvasVO canvasVO, Map<String, int[]> frequency, String text) {
+        int doc = docCount;
+        if (doc == canvasIds.length) {
+            int capacity = doc * 2;
+            canvasIds = Arrays.copyOf(canvasIds, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        int length = 0;
+        for (Map.Entry<String, int[]> entry : frequency.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), key -> new Postings()).add(doc, entry.getValue()[0]);
+            length += entry.getValue()[0];
+        }
+        canvasIds[doc] = canvasVO.getId();
+        titles[doc] = canvasVO.getTitle();
+        texts[doc] = text;
+        lengths[doc] = length;
+        docs.put(canvasVO.getId(), doc);
+        totalLength += length;
+        docCount++;
+    }
+
+    private void remove(long canvasId) {
+        int doc = docs.remove(canvasId);
+        if (doc < 0) {
+            return;
+        }
+        deleted.set(doc);
+        deletedCount++;
+        totalLength -= lengths[doc];
+        titles[doc] = null;
+        texts[doc] = null;
+    }
+
+    /**
+     * 去掉已删除的文档并重新编号，编号映射单调递增，倒排表顺序不变
+     */
+    private void compact() {
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = live;
+            canvasIds[live] = canvasIds[doc];
+            titles[live] = titles[doc];
+            texts[live] = texts[doc];
+            lengths[live] = lengths[doc];
+            docs.put(canvasIds[live], live);
+            live++;
+        }
+        Arrays.fill(titles, live, docCount, null);
+        Arrays.fill(texts, live, docCount, null);
+        terms.values().removeIf(postings -> {
+            int size = 0;
+            for (int i = 0; i < postings.size; i++) {
+                int doc = remap[postings.docs[i]];
+                if (doc >= 0) {
+                    postings.docs[size] = doc;
+                    postings.freqs[size] = postings.freqs[i];
+                    size++;
+                }
+            }
+            postings.size = size;
+            return size == 0;
+        });
+        docCount = live;
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    /**
+     * 取第一个命中查询词的位置附近的一段文字，没有命中（只命中标题或超出保存长度）时取开头
+     */
+    private String snippet(String text, List<String> queryTerms) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase();
+        int position = -1;
+        for (String term : queryTerms) {
+            int index = lower.indexOf(term);
+            if (index >= 0 && (position < 0 || index < position)) {
+                position = index;
+            }
+        }
+        int start = position < 0 ? 0 : Math.max(0, position - snippetChars / 3);
+        int end = Math.min(text.length(), start + snippetChars);
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append('…');
+        }
+        snippet.append(text, start, end);
+        if (end < text.length()) {
+            snippet.append('…');
+        }
+        return snippet.toString().replace('\n', ' ');
+    }
+
+    static List<String> tokens(CharSequence text, boolean query) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, query, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * 分词：中日韩文字逐字输出，并输出相邻两字；查询时连续两字以上只用两字词，单字才用单字词，
+     * 这样“遗产”只匹配相邻的两个字。其他字母数字连续段转小写作为一个词
+     */
+    static void tokenize(CharSequence text, boolean query, Consumer<String> sink) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        int runLength = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, sink);
+                if (!query) {
+                    sink.accept(new String(Character.toChars(codePoint)));
+                }
+                if (previousCjk >= 0) {
+                    sink.accept(new StringBuilder(4).appendCodePoint(previousCjk).appendCodePoint(codePoint).toString());
+                }
+                previousCjk = codePoint;
+                runLength++;
+                continue;
+            }
+            if (query && runLength == 1) {
+                sink.accept(new String(Character.toChars(previousCjk)));
+            }
+            previousCjk = -1;
+            runLength = 0;
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() < MAX_TERM_LENGTH) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else {
+                flushWord(word, sink);
+            }
+        }
+        if (query && runLength == 1) {
+            sink.accept(new String(Character.toChars(previousCjk)));
+        }
+        flushWord(word, sink);
+    }
+
+    private static void flushWord(StringBuilder word, Consumer<String> sink) {
+        if (word.length() > 0) {
+            sink.accept(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("canvas.search.documents", this, index -> index.docCount - index.deletedCount)
+                .register(registry);
+        Gauge.builder("canvas.search.pending", dirty, Set::size).register(registry);
+        FunctionCounter.builder("canvas.search.queries", queries, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.search.reindexed", refreshed, LongAdder::sum).register(registry);
+    }
+}
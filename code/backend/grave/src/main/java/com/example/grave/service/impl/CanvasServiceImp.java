@@ -1,107 +1,376 @@
 package com.example.grave.service.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
 
+import jakarta.annotation.PostConstruct;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.example.grave.common.context.BaseContext;
 import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.BoxPatch;
 import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
 import com.example.grave.pojo.entity.Heritage;
 import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.HeritageRequest;
 import com.example.grave.pojo.entity.ImageBox;
 import com.example.grave.pojo.entity.MarkdownBox;
 import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasPageVO;
+import com.example.grave.pojo.vo.CanvasSearchPageVO;
+import com.example.grave.pojo.vo.CanvasSummaryVO;
 import com.example.grave.pojo.vo.CanvasVO;
 import com.example.grave.service.CanvasService;
+import com.example.grave.service.HeritageClaimQueue;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 @Service
 public class CanvasServiceImp implements CanvasService {
+    private static final Logger log = LoggerFactory.getLogger(CanvasServiceImp.class);
+
     @Autowired
     private CanvasMapper canvasMapper;
+    @Autowired
+    private PublicCanvasIndex publicCanvasIndex;
+    @Autowired
+    private CanvasCache canvasCache;
+    @Autowired
+    private HeritageClaimEngine heritageClaimEngine;
+    @Autowired
+    private HeritageClaimQueue heritageClaimQueue;
+    @Autowired
+    private CanvasStreamWriter canvasStreamWriter;
+    @Autowired
+    private HeritageReleaseScheduler heritageReleaseScheduler;
+    @Autowired
+    private CanvasSearchIndex canvasSearchIndex;
+    @Autowired
+    private CanvasSnapshotStore canvasSnapshotStore;
+    @Autowired
+    private CanvasViewportIndex canvasViewportIndex;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    private SqlSessionTemplate batchSqlSession;
+    private final List<LongConsumer> replaceListeners = new CopyOnWriteArrayList<>();
 
+    // 首页推荐画布数量
+    private static final int FEED_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
     
-    @Value("${kafka.topics.heritage-requests}")
-    private String heritageRequestsTopic;
-    
+    @PostConstruct
+    public void init() {
+        // 批量执行器：同一语句的多次调用合并为一次 executeBatch，配合驱动的 rewriteBatchedStatements 改写为多值插入
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+
+    @Override
+    @Transactional
     public void saveCanvas(CanvasDTO canvasDTO,boolean justContent) {
+        CanvasMapper batchMapper = batchSqlSession.getMapper(CanvasMapper.class);
         // 保存画布主信息并获取生成的ID
         if(!justContent){
-            canvasMapper.saveCanvas(canvasDTO);
+            batchMapper.saveCanvas(canvasDTO);
+            // 子组件需要画布ID，先执行主信息插入
+            batchSqlSession.flushStatements();
+        }else{
+            batchMapper.bumpCanvasVersion(canvasDTO.getId());
         }
-        // System.out.println("ocao");
-        // System.out.println(canvasDTO.getId());
+        insertContent(batchMapper, canvasDTO);
 
-        
+        long canvasId = canvasDTO.getId();
+        boolean newPublic = !justContent && canvasDTO.getIsPublic() == 1;
+        List<Heritage> heritages = canvasDTO.getHeritages();
+        afterCommit(() -> {
+            if (newPublic) {
+                publicCanvasIndex.add(canvasId);
+            }
+            canvasCache.invalidate(canvasId);
+            canvasSnapshotStore.changed(canvasId);
+            canvasSearchIndex.changed(canvasId);
+            if (heritages != null) {
+                heritageReleaseScheduler.schedule(heritages);
+            }
+            if (justContent) {
+                notifyReplaced(canvasId);
+            }
+        });
+    }
+
+    @Override
+    public void addReplaceListener(LongConsumer listener) {
+        replaceListeners.add(listener);
+    }
+
+    private void notifyReplaced(long canvasId) {
+        for (LongConsumer listener : replaceListeners) {
+            try {
+                listener.accept(canvasId);
+            } catch (RuntimeException e) {
+                log.warn("画布 {} 替换通知失败", canvasId, e);
+            }
+        }
+    }
+
+    @Override
+    @Transactional
+    public void replaceCanvas(CanvasDTO canvasDTO) {
+        // 删除与重新插入在同一事务、同一批量会话中完成，失败时不会留下空画布
+        CanvasMapper batchMapper = batchSqlSession.getMapper(CanvasMapper.class);
+        deleteContent(batchMapper, canvasDTO.getId());
+        batchMapper.bumpCanvasVersion(canvasDTO.getId());
+        insertContent(batchMapper, canvasDTO);
+
+        long canvasId = canvasDTO.getId();
+        List<Heritage> heritages = canvasDTO.getHeritages();
+        afterCommit(() -> {
+            canvasCache.invalidate(canvasId);
+            canvasSnapshotStore.changed(canvasId);
+            canvasSearchIndex.changed(canvasId);
+            if (heritages != null) {
+                heritageReleaseScheduler.schedule(heritages);
+            }
+            notifyReplaced(canvasId);
+        });
+    }
+
+    /**
+     * 批量插入画布的全部子组件，网络往返次数与遗产数量无关
+     */
+    private void insertContent(CanvasMapper batchMapper, CanvasDTO canvasDTO) {
         // 保存图片盒子
         if (canvasDTO.getImages() != null && !canvasDTO.getImages().isEmpty()) {
-            canvasMapper.insertImageBoxes(canvasDTO);
+            batchMapper.insertImageBoxes(canvasDTO);
         }
         
         // 保存文本盒子
         if (canvasDTO.getTexts() != null && !canvasDTO.getTexts().isEmpty()) {
-            canvasMapper.insertTextBoxes(canvasDTO);
-        }
-        
-        // 保存遗产信息
-        if (canvasDTO.getHeritages() != null && !canvasDTO.getHeritages().isEmpty()) {
-            for(Heritage heritage:canvasDTO.getHeritages()){
-                heritage.setPid(canvasDTO.getId());
-                canvasMapper.insertHeritages(heritage);
-                if (heritage.getItems() != null && !heritage.getItems().isEmpty()) {
-                    canvasMapper.insertHeritageItems(heritage);
-                }
-            }
+            batchMapper.insertTextBoxes(canvasDTO);
         }
+
         // 保存markdown信息
         if (canvasDTO.getMarkdowns() != null && !canvasDTO.getMarkdowns().isEmpty()) {
-            
-            canvasMapper.insertMarkdowns(canvasDTO);
-            
+            batchMapper.insertMarkdowns(canvasDTO);
+        }
+        
+        // 保存遗产信息：所有遗产合为一批插入，执行后由驱动回填生成的ID
+        if (canvasDTO.getHeritages() == null || canvasDTO.getHeritages().isEmpty()) {
+            batchSqlSession.flushStatements();
+            return;
         }
+        Date now = new Date();
+        for(Heritage heritage:canvasDTO.getHeritages()){
+            heritage.setPid(canvasDTO.getId());
+            markReleased(heritage, now);
+            batchMapper.insertHeritages(heritage);
+        }
+        batchSqlSession.flushStatements();
+
+        // 所有遗产项合为一批插入
+        for(Heritage heritage:canvasDTO.getHeritages()){
+            if (heritage.getItems() == null) {
+                continue;
+            }
+            for (HeritageItem item : heritage.getItems()) {
+                item.setHeritageId(heritage.getId());
+                batchMapper.insertHeritageItem(item);
+            }
+        }
+        batchSqlSession.flushStatements();
+    }
+
+    /**
+     * 删除画布的全部子组件，语句数量固定
+     */
+    private void deleteContent(CanvasMapper mapper, long canvasId) {
+        mapper.deleteHeritageItemsByCanvas(canvasId);
+        mapper.deleteHeritages(canvasId);
+        mapper.deleteImages(canvasId);
+        mapper.deleteTexts(canvasId);
+        mapper.deleteMarkdowns(canvasId);
     }
 
 
     @Override
     public CanvasVO getCanvas(int userId, int id) {
         CanvasVO canvasVO = new CanvasVO();
-        canvasVO.setImages(canvasMapper.getImages(id));;
-        canvasVO.setTexts(canvasMapper.getTexts(id));
+        CanvasVO cached = loadFull(id);
+        canvasVO.setImages(cached != null ? cached.getImages() : new ArrayList<ImageBox>());
+        canvasVO.setTexts(cached != null ? cached.getTexts() : new ArrayList<TextBox>());
         return canvasVO;
     }
 
 
     @Override
     public List<CanvasVO> loadCanvas() {
-        List<CanvasDTO> canvasDTOs = canvasMapper.loadCanvas();
-        List<CanvasVO> canvasVOs = new ArrayList<CanvasVO>();
-        for (CanvasDTO canvasDTO : canvasDTOs) {
-            CanvasVO canvasVO = new CanvasVO();
-            canvasVO.setImages(canvasMapper.getImages(canvasDTO.getId()));
-            canvasVO.setTexts(canvasMapper.getTexts(canvasDTO.getId()));
-           
-            List<Heritage> heritages = canvasMapper.getHeritages(canvasDTO.getId());
-            // for(Heritage heritage:heritages){
-            //     heritage.setItems(canvasMapper.getHeritageItems(heritage.getId()));
-            // }
-            List<MarkdownBox> markdowns = canvasMapper.getMarkdowns(canvasDTO.getId());
-            canvasVO.setMarkdowns(markdowns);
-            canvasVO.setHeritages(heritages);
-            canvasVOs.add(canvasVO);
+        // 从内存索引中随机抽取公开画布，优先取缓存，未命中的批量加载
+        long[] sampled = publicCanvasIndex.sample(FEED_SIZE);
+        List<CanvasVO> canvasVOs = new ArrayList<CanvasVO>(sampled.length);
+        List<Long> missing = new ArrayList<Long>();
+        for (long id : sampled) {
+            CanvasVO cached = canvasCache.get(id);
+            if (cached == null) {
+                missing.add(id);
+            } else if (cached.getIsPublic() == 1) {
+                canvasVOs.add(feedView(cached));
+            } else {
+                publicCanvasIndex.remove(id);
+            }
+        }
+        for (CanvasVO canvasVO : loadPublic(missing)) {
+            canvasVOs.add(feedView(canvasVO));
         }
         return canvasVOs;
     }
+
+    @Override
+    public void streamFeed(OutputStream out) throws IOException {
+        JsonGenerator generator = canvasStreamWriter.open(out);
+        long[] sampled = publicCanvasIndex.sample(FEED_SIZE);
+        List<Long> missing = new ArrayList<Long>();
+        // 缓存中的画布先写出去，再批量加载其余的
+        for (long id : sampled) {
+            CanvasVO cached = canvasCache.get(id);
+            if (cached == null) {
+                missing.add(id);
+            } else if (cached.getIsPublic() == 1) {
+                canvasStreamWriter.writeLine(generator, feedView(cached));
+            } else {
+                publicCanvasIndex.remove(id);
+            }
+        }
+        generator.flush();
+        for (CanvasVO canvasVO : loadPublic(missing)) {
+            canvasStreamWriter.writeLine(generator, feedView(canvasVO));
+        }
+        generator.flush();
+    }
+
+    /**
+     * 批量加载缓存未命中的公开画布并放入缓存，已删除或转为私密的从索引中剔除
+     */
+    private List<CanvasVO> loadPublic(List<Long> missing) {
+        if (missing.isEmpty()) {
+            return new ArrayList<CanvasVO>();
+        }
+        long stamp = canvasCache.stamp();
+        List<CanvasVO> loaded = canvasSnapshotStore.loadPublic(missing);
+        if (loaded.size() < missing.size()) {
+            // 已被删除或转为私密的画布，从索引中剔除
+            Set<Long> found = new HashSet<Long>();
+            for (CanvasVO canvasVO : loaded) {
+                found.add(canvasVO.getId());
+            }
+            for (Long id : missing) {
+                if (!found.contains(id)) {
+                    publicCanvasIndex.remove(id);
+                }
+            }
+        }
+        for (CanvasVO canvasVO : loaded) {
+            canvasCache.put(canvasVO, stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * 首页展示不包含遗产项，复制一份去掉遗产项的画布，不修改缓存中的对象
+     */
+    private static CanvasVO feedView(CanvasVO canvasVO) {
+        List<Heritage> heritages = new ArrayList<Heritage>(canvasVO.getHeritages().size());
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            heritages.add(withoutItems(heritage));
+        }
+        return CanvasVO.builder()
+                .id(canvasVO.getId())
+                .userId(canvasVO.getUserId())
+                .title(canvasVO.getTitle())
+                .isPublic(canvasVO.getIsPublic())
+                .version(canvasVO.getVersion())
+                .images(canvasVO.getImages())
+                .texts(canvasVO.getTexts())
+                .markdowns(canvasVO.getMarkdowns())
+                .heritages(heritages)
+                .build();
+    }
+
+    /**
+     * 去掉未公开遗产的遗产项，全部已公开时直接返回缓存中的对象
+     */
+    private static CanvasVO releasedView(CanvasVO canvasVO) {
+        boolean hidden = false;
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            if (Boolean.FALSE.equals(heritage.getReleased())) {
+                hidden = true;
+                break;
+            }
+        }
+        if (!hidden) {
+            return canvasVO;
+        }
+        List<Heritage> heritages = new ArrayList<Heritage>(canvasVO.getHeritages().size());
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            if (Boolean.FALSE.equals(heritage.getReleased())) {
+                Heritage copy = withoutItems(heritage);
+                copy.setItems(new ArrayList<HeritageItem>());
+                heritages.add(copy);
+            } else {
+                heritages.add(heritage);
+            }
+        }
+        return CanvasVO.builder()
+                .id(canvasVO.getId())
+                .userId(canvasVO.getUserId())
+                .title(canvasVO.getTitle())
+                .isPublic(canvasVO.getIsPublic())
+                .version(canvasVO.getVersion())
+                .images(canvasVO.getImages())
+                .texts(canvasVO.getTexts())
+                .markdowns(canvasVO.getMarkdowns())
+                .heritages(heritages)
+                .build();
+    }
+
+    /**
+     * 读穿缓存加载完整画布（含遗产项），画布不存在时返回 null
+     */
+    private CanvasVO loadFull(long canvasId) {
+        CanvasVO canvasVO = canvasCache.get(canvasId);
+        if (canvasVO != null) {
+            return canvasVO;
+        }
+        long stamp = canvasCache.stamp();
+        // 子组件与遗产项批量加载（或读快照），查询次数与遗产数量无关
+        canvasVO = canvasSnapshotStore.load(canvasId);
+        canvasCache.put(canvasVO, stamp);
+        return canvasVO;
+    }
     
+    @Override
+    public CanvasSearchPageVO searchCanvas(String keyword, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return canvasSearchIndex.search(keyword, Math.max(0, page), pageSize);
+    }
+
     @Override
     public List<HeritageItem> getNonePrivateHeritage(Long heritageId) {
         // 获取所有遗产项
@@ -119,79 +388,16 @@ public class CanvasServiceImp implements CanvasService {
         // 获取当前用户ID
         Long currentUserId = BaseContext.getCurrentId();
         
-        // 创建CompletableFuture来异步处理结果
-        CompletableFuture<HeritageItem> future = CompletableFuture.supplyAsync(() -> {
-            // 获取指定heritageId下所有未被获得的私密遗产项
-            List<HeritageItem> items = canvasMapper.getUnclaimedPrivateHeritageItems(heritageId);
-            HeritageItem result = null;
-            
-            if (items != null && !items.isEmpty()) {
-                // 随机选择一个遗产项
-                int randomIndex = (int) (Math.random() * items.size());
-                HeritageItem selectedItem = items.get(randomIndex);
-                
-                // 随机决定是否能获得遗产（模拟"有缘"）
-                if (Math.random() < 0.5) { // 50%的概率获得遗产
-                    // 设置用户ID
-                    selectedItem.setUserId(currentUserId);
-                    
-                    // 使用乐观锁更新数据库
-                    try {
-                        boolean updated = canvasMapper.updateHeritageItemOwner(selectedItem);
-                        if (updated) {
-                            result = selectedItem;  // 更新成功，返回获得的遗产项
-                        }
-                    } catch (Exception e) {
-                        // 处理并发更新异常
-                        result = null;
-                    }
+        // 按遗产分区排队，由领取引擎从内存池中弹出遗产项，攒批写回数据库后完成
+        return heritageClaimQueue.submit(new HeritageRequest(null, heritageId, currentUserId))
+            .thenApply(item -> {
+                if (item != null) {
+                    canvasCache.invalidateHeritage(heritageId);
                 }
-            }
-            
-            return result;
-        });
-        
-        return future;
+                return item;
+            });
     }
 
-    // @KafkaListener(topics = "${kafka.topics.heritage-requests}", groupId = "${spring.kafka.consumer.group-id}")
-    // public void processHeritageRequest(@Header(KafkaHeaders.RECEIVED_KEY) String key, 
-    //                                  @Payload HeritageRequest request) {
-    //     // 处理请求
-    //     HeritageItem result = null;
-        
-    //     // 获取指定heritageId下所有未被获得的私密遗产项
-    //     List<HeritageItem> items = canvasMapper.getUnclaimedPrivateHeritageItems(request.getHeritageId());
-    //     if (items != null && !items.isEmpty()) {
-    //         // 随机选择一个遗产项
-    //         int randomIndex = (int) (Math.random() * items.size());
-    //         HeritageItem selectedItem = items.get(randomIndex);
-            
-    //         // 随机决定是否能获得遗产（模拟"有缘"）
-    //         if (Math.random() < 0.5) { // 50%的概率获得遗产
-    //             // 设置用户ID
-    //             selectedItem.setUserId(request.getUserId());
-                
-    //             // 更新数据库
-    //             try {
-    //                 boolean updated = canvasMapper.updateHeritageItemOwner(selectedItem);
-    //                 if (updated) {
-    //                     result = selectedItem;  // 更新成功，返回获得的遗产项
-    //                 }
-    //             } catch (Exception e) {
-    //                 // 处理并发更新异常
-    //                 result = null;
-    //             }
-    //         }
-    //     }
-        
-    //     // 完成对应的CompletableFuture
-    //     CompletableFuture<HeritageItem> future = pendingRequests.remove(key);
-    //     if (future != null) {
-    //         future.complete(result);
-    //     }
-    // }
-
     @Override
     public List<CanvasVO> getCanvasList(Long userId) {
         List<CanvasVO> canvasVOs = canvasMapper.getCanvasList(userId);
@@ -199,40 +405,286 @@ public class CanvasServiceImp implements CanvasService {
     }
 
     @Override
+    public CanvasPageVO getCanvasPage(long userId, Long cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        long beforeId = cursor == null ? Long.MAX_VALUE : cursor;
+        // 多取一条判断是否还有下一页
+        List<CanvasSummaryVO> items = canvasMapper.getCanvasSummaries(userId, beforeId, pageSize + 1);
+        Long nextCursor = null;
+        if (items.size() > pageSize) {
+            items = new ArrayList<>(items.subList(0, pageSize));
+            nextCursor = items.get(pageSize - 1).getId();
+        }
+        return new CanvasPageVO(items, nextCursor);
+    }
+
+    @Override
+    @Transactional
     public void deleteCanvas(long canvasId,boolean justContent) {
         if(!justContent){
             canvasMapper.deleteCanvas(canvasId);
+        }else{
+            canvasMapper.bumpCanvasVersion(canvasId);
         }
-        List<Heritage> heritages = canvasMapper.getHeritages(canvasId);
-        for(Heritage heritage:heritages){
-            canvasMapper.deleteHeritageItems(heritage.getId());
-        }
-        canvasMapper.deleteImages(canvasId);
-        canvasMapper.deleteTexts(canvasId);
-        canvasMapper.deleteMarkdowns(canvasId);
+        deleteContent(canvasMapper, canvasId);
+        afterCommit(() -> {
+            if (!justContent) {
+                publicCanvasIndex.remove(canvasId);
+                canvasSearchIndex.removed(canvasId);
+            } else {
+                canvasSearchIndex.changed(canvasId);
+            }
+            canvasCache.invalidate(canvasId);
+            canvasSnapshotStore.changed(canvasId);
+            canvasViewportIndex.invalidate(canvasId);
+            notifyReplaced(canvasId);
+        });
     }
 
 
     @Override
     public CanvasVO getCanvasById(long userId,long canvasId){
-        CanvasVO canvasVO = null;
-        if(userId != -1){
-            canvasVO = canvasMapper.getCanvasBy2Id(userId,canvasId);
-        }
-        else{
-            canvasVO = canvasMapper.getCanvasById(canvasId);
-        }
-        // System.out.println(canvasVO.getId());
-        canvasVO.setImages(canvasMapper.getImages(canvasId));
-        canvasVO.setTexts(canvasMapper.getTexts(canvasId));
-       
-        List<Heritage> heritages = canvasMapper.getHeritages(canvasId);
-        for(Heritage heritage:heritages){
-            heritage.setItems(canvasMapper.getHeritageItems(heritage.getId()));
-        }
-        canvasVO.setHeritages(heritages);
-        canvasVO.setMarkdowns(canvasMapper.getMarkdowns(canvasId));
-        return canvasVO;
+        CanvasVO canvasVO = loadFull(canvasId);
+        // 需要校验用户时只返回该用户自己的画布
+        if(canvasVO == null || (userId != -1 && canvasVO.getUserId() != userId)){
+            return null;
+        }
+        // 不校验用户时是公开浏览，未到公开时间的遗产不带遗产项
+        return userId == -1 ? releasedView(canvasVO) : canvasVO;
     }
 
+    @Override
+    public String getCanvasETag(long userId, long canvasId) {
+        // 读缓存中的画布在修改、领取提交后立即失效，命中时不查库
+        CanvasVO header = canvasCache.get(canvasId);
+        if (header == null) {
+            header = canvasMapper.getCanvasVersion(canvasId);
+        }
+        if(header == null || (userId != -1 && header.getUserId() != userId)){
+            return null;
+        }
+        // 领取改变遗产项归属但不改内容版本，领取计数单独计入
+        return "\"" + canvasId + "-" + header.getVersion() + "-" + header.getClaims()
+                + (userId == -1 ? "-p" : "-o") + "\"";
+    }
+
+    @Override
+    public CanvasVO getCanvasViewport(long userId, long canvasId, int left, int top, int width, int height) {
+        CanvasVO canvasVO = canvasViewportIndex.query(canvasId, left, top, width, height);
+        if(canvasVO == null || (userId != -1 && canvasVO.getUserId() != userId)){
+            return null;
+        }
+        return userId == -1 ? releasedView(canvasVO) : canvasVO;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean streamCanvasById(long userId, long canvasId, OutputStream out) throws IOException {
+        // 已缓存的直接从内存写出，否则从游标逐行读出，不在内存中拼装整个画布
+        CanvasVO cached = canvasCache.get(canvasId);
+        CanvasVO header = cached != null ? cached : canvasMapper.getCanvasById(canvasId);
+        if (header == null || (userId != -1 && header.getUserId() != userId)) {
+            return false;
+        }
+        JsonGenerator generator = canvasStreamWriter.open(out);
+        boolean releasedOnly = userId == -1;
+        if (cached != null) {
+            canvasStreamWriter.writeFromMemory(generator, cached, releasedOnly);
+        } else {
+            canvasStreamWriter.writeFromCursors(generator, header, releasedOnly);
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public CanvasPatchDTO patchCanvas(long userId, CanvasPatchDTO patch) {
+        long canvasId = patch.getId();
+        Long ownerId = canvasMapper.getCanvasOwner(canvasId);
+        if (ownerId == null || ownerId != userId) {
+            return null;
+        }
+        if (patch.getTitle() != null || patch.getIsPublic() != null) {
+            canvasMapper.updateCanvasHeader(patch);
+        }
+        canvasMapper.bumpCanvasVersion(canvasId);
+
+        // 每类组件依次删除、修改、新增，写入量只与本次修改的组件数量有关
+        BoxPatch<ImageBox> images = patch.getImages();
+        if (images != null) {
+            if (!isEmpty(images.getRemoved())) {
+                requireRows(canvasMapper.deleteImageBoxesByIds(canvasId, images.getRemoved()),
+                        new HashSet<>(images.getRemoved()).size(), "部分图片");
+            }
+            if (!isEmpty(images.getUpdated())) {
+                for (ImageBox image : images.getUpdated()) {
+                    requireRows(canvasMapper.updateImageBox(canvasId, image), 1, "图片 " + image.getId());
+                }
+            }
+            if (!isEmpty(images.getAdded())) {
+                canvasMapper.insertImageBoxList(canvasId, images.getAdded());
+            }
+        }
+
+        BoxPatch<TextBox> texts = patch.getTexts();
+        if (texts != null) {
+            if (!isEmpty(texts.getRemoved())) {
+                requireRows(canvasMapper.deleteTextBoxesByIds(canvasId, texts.getRemoved()),
+                        new HashSet<>(texts.getRemoved()).size(), "部分文本框");
+            }
+            if (!isEmpty(texts.getUpdated())) {
+                for (TextBox text : texts.getUpdated()) {
+                    requireRows(canvasMapper.updateTextBox(canvasId, text), 1, "文本框 " + text.getId());
+                }
+            }
+            if (!isEmpty(texts.getAdded())) {
+                canvasMapper.insertTextBoxList(canvasId, texts.getAdded());
+            }
+        }
+
+        BoxPatch<MarkdownBox> markdowns = patch.getMarkdowns();
+        if (markdowns != null) {
+            if (!isEmpty(markdowns.getRemoved())) {
+                requireRows(canvasMapper.deleteMarkdownsByIds(canvasId, markdowns.getRemoved()),
+                        new HashSet<>(markdowns.getRemoved()).size(), "部分 markdown");
+            }
+            if (!isEmpty(markdowns.getUpdated())) {
+                for (MarkdownBox markdown : markdowns.getUpdated()) {
+                    requireRows(canvasMapper.updateMarkdown(canvasId, markdown), 1, "markdown " + markdown.getId());
+                }
+            }
+            if (!isEmpty(markdowns.getAdded())) {
+                canvasMapper.insertMarkdownList(canvasId, markdowns.getAdded());
+            }
+        }
+
+        BoxPatch<Heritage> heritages = patch.getHeritages();
+        if (heritages != null) {
+            if (!isEmpty(heritages.getRemoved())) {
+                canvasMapper.deleteHeritageItemsByHeritageIds(canvasId, heritages.getRemoved());
+                requireRows(canvasMapper.deleteHeritagesByIds(canvasId, heritages.getRemoved()),
+                        new HashSet<>(heritages.getRemoved()).size(), "部分遗产");
+            }
+            if (!isEmpty(heritages.getUpdated())) {
+                for (Heritage heritage : heritages.getUpdated()) {
+                    markReleased(heritage, new Date());
+                    requireRows(canvasMapper.updateHeritage(canvasId, heritage), 1, "遗产 " + heritage.getId());
+                    // 没有ID的遗产项追加；有ID的只能修改未被领取的，已被领取且内容有变化时整个保存失败
+                    List<HeritageItem> newItems = new ArrayList<HeritageItem>();
+                    if (heritage.getItems() != null) {
+                        for (HeritageItem item : heritage.getItems()) {
+                            if (item.getId() == null) {
+                                newItems.add(item);
+                            } else if (canvasMapper.updateUnclaimedHeritageItem(heritage.getId(), item) == 0
+                                    && canvasMapper.countSameHeritageItem(heritage.getId(), item) == 0) {
+                                throw new RuntimeException("遗产项 " + item.getId() + " 不存在或已被领取，无法修改");
+                            }
+                        }
+                    }
+                    if (!newItems.isEmpty()) {
+                        // 回填生成的ID，客户端之后的增量保存可以直接修改或删除这些遗产项
+                        canvasMapper.insertHeritageItemList(heritage.getId(), newItems);
+                    }
+                }
+            }
+            if (!isEmpty(heritages.getAdded())) {
+                for (Heritage heritage : heritages.getAdded()) {
+                    heritage.setPid(canvasId);
+                    markReleased(heritage, new Date());
+                    canvasMapper.insertHeritages(heritage);
+                    if (!isEmpty(heritage.getItems())) {
+                        canvasMapper.insertHeritageItemList(heritage.getId(), heritage.getItems());
+                    }
+                }
+            }
+        }
+
+        List<Long> removedItems = patch.getRemovedHeritageItems();
+        List<Long> itemHeritageIds = new ArrayList<>();
+        if (!isEmpty(removedItems)) {
+            itemHeritageIds = canvasMapper.getHeritageIdsOfItems(canvasId, removedItems);
+            if (canvasMapper.deleteUnclaimedHeritageItems(canvasId, removedItems) != new HashSet<>(removedItems).size()) {
+                throw new RuntimeException("部分遗产项不存在或已被领取，无法删除");
+            }
+        }
+
+        Integer isPublic = patch.getIsPublic();
+        List<Long> evictedHeritageIds = itemHeritageIds;
+        afterCommit(() -> {
+            evictedHeritageIds.forEach(heritageClaimEngine::evict);
+            canvasCache.invalidate(canvasId);
+            canvasSnapshotStore.changed(canvasId);
+            canvasSearchIndex.changed(canvasId);
+            if (heritages != null) {
+                // 遗产项有变化的遗产，丢弃领取内存池
+                if (!isEmpty(heritages.getRemoved())) {
+                    heritages.getRemoved().forEach(heritageClaimEngine::evict);
+                }
+                if (!isEmpty(heritages.getUpdated())) {
+                    heritages.getUpdated().forEach(heritage -> heritageClaimEngine.evict(heritage.getId()));
+                    heritageReleaseScheduler.schedule(heritages.getUpdated());
+                }
+                if (!isEmpty(heritages.getAdded())) {
+                    heritageReleaseScheduler.schedule(heritages.getAdded());
+                }
+            }
+            if (isPublic != null) {
+                if (isPublic == 1) {
+                    publicCanvasIndex.add(canvasId);
+                } else {
+                    publicCanvasIndex.remove(canvasId);
+                }
+            }
+        });
+        return patch;
+    }
+
+    private static Heritage withoutItems(Heritage heritage) {
+        Heritage copy = new Heritage();
+        copy.setId(heritage.getId());
+        copy.setPid(heritage.getPid());
+        copy.setPublicTime(heritage.getPublicTime());
+        copy.setReleased(heritage.getReleased());
+        copy.setLeft(heritage.getLeft());
+        copy.setTop(heritage.getTop());
+        copy.setWidth(heritage.getWidth());
+        copy.setHeight(heritage.getHeight());
+        return copy;
+    }
+
+    /**
+     * 公开标记由服务端按公开时间写入，不信任客户端传来的值
+     */
+    private static void markReleased(Heritage heritage, Date now) {
+        heritage.setReleased(heritage.getPublicTime() == null || !heritage.getPublicTime().after(now));
+    }
+
+    /**
+     * 增量修改按ID定位组件，影响行数不符说明组件已不存在（例如画布已被整体替换），抛出异常使整个增量回滚
+     */
+    private static void requireRows(int rows, int expected, String what) {
+        if (rows != expected) {
+            throw new RuntimeException(what + "不存在或已被删除");
+        }
+    }
+
+    /**
+     * 在事务提交后执行，避免其他请求在提交前把旧数据重新读进缓存
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
 }
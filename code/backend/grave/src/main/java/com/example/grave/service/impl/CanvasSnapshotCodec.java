@@ -0,0 +1,250 @@
+package com.example.grave.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+/**
+ * 画布快照的二进制编码
+ * 只编码图片、文本、markdown 和遗产本身，主信息（标题、公开状态）在画布行上，遗产项会被领取单独读取。
+ * 格式：1 字节格式号，之后依次为四类组件的个数与字段，整数用变长编码（坐标先做 zigzag），
+ * 字符串为长度加 UTF-8 字节，可空的ID存为 id + 1（0 表示空）；格式号之后的内容整体 deflate 压缩
+ */
+public final class CanvasSnapshotCodec {
+
+    private static final int FORMAT = 1;
+    // 组件个数来自数据本身，损坏时可能很大，列表按需扩容而不是一次分配
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private CanvasSnapshotCodec() {
+    }
+
+    public static byte[] encode(CanvasVO canvasVO) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(FORMAT);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 512))) {
+            List<ImageBox> images = nonNull(canvasVO.getImages());
+            writeVarLong(out, images.size());
+            for (ImageBox image : images) {
+                writeId(out, image.getId());
+                writeString(out, image.getImageUrl());
+                writeBounds(out, image.getLeft(), image.getTop(), image.getWidth(), image.getHeight());
+            }
+            List<TextBox> texts = nonNull(canvasVO.getTexts());
+            writeVarLong(out, texts.size());
+            for (TextBox text : texts) {
+                writeId(out, text.getId());
+                writeString(out, text.getContent());
+                writeBounds(out, text.getLeft(), text.getTop(), text.getWidth(), text.getHeight());
+            }
+            List<MarkdownBox> markdowns = nonNull(canvasVO.getMarkdowns());
+            writeVarLong(out, markdowns.size());
+            for (MarkdownBox markdown : markdowns) {
+                writeId(out, markdown.getId());
+                writeString(out, markdown.getContent());
+                writeBounds(out, markdown.getLeft(), markdown.getTop(), markdown.getWidth(), markdown.getHeight());
+            }
+            List<Heritage> heritages = nonNull(canvasVO.getHeritages());
+            writeVarLong(out, heritages.size());
+            for (Heritage heritage : heritages) {
+                writeId(out, heritage.getId());
+                writeId(out, heritage.getPublicTime() == null ? null : heritage.getPublicTime().getTime());
+                out.writeByte(heritage.getReleased() == null ? 2 : heritage.getReleased() ? 1 : 0);
+                writeBounds(out, heritage.getLeft(), heritage.getTop(), heritage.getWidth(), heritage.getHeight());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解码到 canvasVO 的组件列表中，遗产项为空列表。
+     * 数据损坏或被截断时抛出 IllegalArgumentException，此时 canvasVO 不会被修改
+     */
+    public static CanvasVO decode(byte[] data, CanvasVO canvasVO) {
+        if (data.length == 0 || data[0] != FORMAT) {
+            throw new IllegalArgumentException("不支持的画布快照格式");
+        }
+        long canvasId = canvasVO.getId();
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(data, 1, data.length - 1), inflater, 512))) {
+            int count = readCount(in);
+            List<ImageBox> images = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+            for (int i = 0; i < count; i++) {
+                ImageBox image = new ImageBox();
+                image.setId(readId(in));
+                image.setPid(canvasId);
+                image.setImageUrl(readString(in));
+                image.setLeft(readVarInt(in));
+                image.setTop(readVarInt(in));
+                image.setWidth(readVarInt(in));
+                image.setHeight(readVarInt(in));
+                images.add(image);
+            }
+            count = readCount(in);
+            List<TextBox> texts = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+            for (int i = 0; i < count; i++) {
+                TextBox text = new TextBox();
+                text.setId(readId(in));
+                text.setPid(canvasId);
+                text.setContent(readString(in));
+                text.setLeft(readVarInt(in));
+                text.setTop(readVarInt(in));
+                text.setWidth(readVarInt(in));
+                text.setHeight(readVarInt(in));
+                texts.add(text);
+            }
+            count = readCount(in);
+            List<MarkdownBox> markdowns = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+            for (int i = 0; i < count; i++) {
+                MarkdownBox markdown = new MarkdownBox();
+                markdown.setId(readId(in));
+                markdown.setPid(canvasId);
+                markdown.setContent(readString(in));
+                markdown.setLeft(readVarInt(in));
+                markdown.setTop(readVarInt(in));
+                markdown.setWidth(readVarInt(in));
+                markdown.setHeight(readVarInt(in));
+                markdowns.add(markdown);
+            }
+            count = readCount(in);
+            List<Heritage> heritages = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+            for (int i = 0; i < count; i++) {
+                Heritage heritage = new Heritage();
+                heritage.setId(readId(in));
+                heritage.setPid(canvasId);
+                Long publicTime = readId(in);
+                heritage.setPublicTime(publicTime == null ? null : new Date(publicTime));
+                int released = in.readUnsignedByte();
+                heritage.setReleased(released == 2 ? null : released == 1);
+                heritage.setLeft(readVarInt(in));
+                heritage.setTop(readVarInt(in));
+                heritage.setWidth(readVarInt(in));
+                heritage.setHeight(readVarInt(in));
+                heritage.setItems(new ArrayList<>());
+                heritages.add(heritage);
+            }
+            // 读到压缩流结尾才会校验 adler32，截断或多出的数据都视为损坏
+            if (in.read() != -1) {
+                throw new IOException("快照末尾有多余数据");
+            }
+            canvasVO.setImages(images);
+            canvasVO.setTexts(texts);
+            canvasVO.setMarkdowns(markdowns);
+            canvasVO.setHeritages(heritages);
+            return canvasVO;
+        } catch (IOException e) {
+            // 包括压缩数据损坏（ZipException）和提前结束（EOFException）
+            throw new IllegalArgumentException("画布快照已损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static <T> List<T> nonNull(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+    private static void writeBounds(DataOutputStream out, int left, int top, int width, int height)
+            throws IOException {
+        writeVarInt(out, left);
+        writeVarInt(out, top);
+        writeVarInt(out, width);
+        writeVarInt(out, height);
+    }
+
+    private static void writeId(DataOutputStream out, Long id) throws IOException {
+        writeVarLong(out, id == null ? 0 : id + 1);
+    }
+
+    private static Long readId(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        return value == 0 ? null : value - 1;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > Integer.MAX_VALUE - 8) {
+            throw new IOException("字符串长度错误");
+        }
+        // 按实际读到的字节分块扩容，截断的数据不会按损坏的长度一次分配
+        byte[] bytes = in.readNBytes((int) (length - 1));
+        if (bytes.length != length - 1) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("组件个数错误");
+        }
+        return (int) count;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = (int) readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+}
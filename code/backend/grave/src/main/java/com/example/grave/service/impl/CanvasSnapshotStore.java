@@ -0,0 +1,222 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.CanvasSnapshot;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.vo.CanvasVO;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 画布快照读写
+ * canvas.snapshot.enabled=true 时，画布除遗产项以外的组件额外以压缩二进制存一份在 canvas_snapshot，
+ * 读取时画布行与快照一条语句取回，再一次查询补上遗产项（领取会修改遗产项，仍以 heritage_item 为准）。
+ * 画布行上的 version 随内容修改在同一事务中递增，快照版本与之不一致即为过期，读到时按规范化表重建。
+ * 保存后由后台线程按固定间隔批量重写快照，同一画布的多次自动保存只重写一次。
+ * 关闭时直接按规范化表组装
+ */
+@Component
+public class CanvasSnapshotStore implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CanvasSnapshotStore.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private CanvasLoader canvasLoader;
+
+    @Value("${canvas.snapshot.enabled:false}")
+    private boolean enabled;
+    @Value("${canvas.snapshot.write-delay-ms:500}")
+    private long writeDelayMs;
+
+    private static final int WRITE_BATCH_SIZE = 200;
+
+    // 已保存、等待重写快照的画布
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService writer;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder corrupt = new LongAdder();
+    private final LongAdder rebuilt = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "canvas-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writeDirty, writeDelayMs, writeDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * 加载完整画布（含遗产项），不存在时返回 null
+     */
+    public CanvasVO load(long canvasId) {
+        if (!enabled) {
+            return canvasLoader.fill(canvasMapper.getCanvasById(canvasId), true);
+        }
+        List<CanvasVO> loaded = loadSnapshots(Collections.singletonList(canvasId), false);
+        return loaded.isEmpty() ? null : loaded.get(0);
+    }
+
+    /**
+     * 批量加载公开画布（含遗产项），已删除或转为私密的不返回
+     */
+    public List<CanvasVO> loadPublic(List<Long> canvasIds) {
+        if (!enabled) {
+            return canvasLoader.fill(canvasMapper.getPublicCanvasesByIds(canvasIds), true);
+        }
+        return loadSnapshots(canvasIds, true);
+    }
+
+    /**
+     * 画布内容修改或删除并提交后调用，由后台线程重写或删除快照
+     */
+    public void changed(long canvasId) {
+        if (enabled) {
+            dirty.add(canvasId);
+        }
+    }
+
+    private List<CanvasVO> loadSnapshots(List<Long> canvasIds, boolean publicOnly) {
+        List<CanvasSnapshot> rows = canvasMapper.getCanvasSnapshots(canvasIds, publicOnly);
+        List<CanvasVO> canvasVOs = new ArrayList<>(rows.size());
+        List<CanvasVO> outdated = new ArrayList<>();
+        List<Heritage> heritages = new ArrayList<>();
+        for (CanvasSnapshot row : rows) {
+            CanvasVO canvasVO = header(row);
+            if (row.getData() != null && row.getSnapshotVersion() != null
+                    && row.getSnapshotVersion() == row.getVersion() && decode(row, canvasVO)) {
+                hits.increment();
+            } else {
+                outdated.add(canvasVO);
+                stale.increment();
+            }
+            canvasVOs.add(canvasVO);
+        }
+        if (!outdated.isEmpty()) {
+            // 先读到版本号再读组件，期间有新的提交时写入的快照版本偏旧，下次读取会再次重建
+            canvasLoader.fill(outdated, false);
+            for (CanvasVO canvasVO : outdated) {
+                write(canvasVO);
+            }
+        }
+        for (CanvasVO canvasVO : canvasVOs) {
+            heritages.addAll(canvasVO.getHeritages());
+        }
+        canvasLoader.fillItems(heritages);
+        return canvasVOs;
+    }
+
+    /**
+     * 快照损坏（写入中断、格式不兼容）时按过期处理，由调用方从组件表重建并覆盖
+     */
+    private boolean decode(CanvasSnapshot row, CanvasVO canvasVO) {
+        try {
+            CanvasSnapshotCodec.decode(row.getData(), canvasVO);
+            return true;
+        } catch (IllegalArgumentException e) {
+            corrupt.increment();
+            log.warn("画布 {} 快照无法解码，从组件表重建: {}", row.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            for (int from = 0; from < ids.size(); from += WRITE_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + WRITE_BATCH_SIZE));
+                Set<Long> deleted = new HashSet<>(batch);
+                List<CanvasVO> outdated = new ArrayList<>();
+                for (CanvasSnapshot row : canvasMapper.getCanvasSnapshots(batch, false)) {
+                    deleted.remove(row.getId());
+                    if (row.getSnapshotVersion() == null || row.getSnapshotVersion() != row.getVersion()) {
+                        outdated.add(header(row));
+                    }
+                }
+                // 画布已删除，快照一并删除
+                for (Long canvasId : deleted) {
+                    canvasMapper.deleteCanvasSnapshot(canvasId);
+                }
+                canvasLoader.fill(outdated, false);
+                for (CanvasVO canvasVO : outdated) {
+                    write(canvasVO);
+                }
+            }
+        } catch (RuntimeException e) {
+            // 快照只是读优化，写失败时读取方会按版本发现并重建，这里不重试
+            log.warn("画布快照写入失败: {}", e.getMessage());
+        }
+    }
+
+    private void write(CanvasVO canvasVO) {
+        byte[] data = CanvasSnapshotCodec.encode(canvasVO);
+        canvasMapper.saveCanvasSnapshot(canvasVO.getId(), canvasVO.getVersion(), data);
+        rebuilt.increment();
+        bytesWritten.add(data.length);
+    }
+
+    private static CanvasVO header(CanvasSnapshot row) {
+        return CanvasVO.builder()
+                .id(row.getId())
+                .userId(row.getUserId())
+                .title(row.getTitle())
+                .isPublic(row.getIsPublic())
+                .version(row.getVersion())
+                .claims(row.getClaims())
+                .build();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("canvas.snapshot.reads", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("canvas.snapshot.reads", stale, LongAdder::sum)
+                .tag("result", "stale").register(registry);
+        FunctionCounter.builder("canvas.snapshot.corrupt", corrupt, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.snapshot.writes", rebuilt, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.snapshot.written.bytes", bytesWritten, LongAdder::sum).register(registry);
+        Gauge.builder("canvas.snapshot.pending", dirty, Set::size).register(registry);
+    }
+}
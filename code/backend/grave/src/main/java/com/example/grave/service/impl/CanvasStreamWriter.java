@@ -0,0 +1,144 @@
+package com.example.grave.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 以 NDJSON 逐行写出画布，每行 {"type": ..., "data": ...}
+ * type 依次为 canvas（标题等基本信息）、image、text、markdown、heritage、heritageItem，
+ * 组件从 MyBatis 游标读出一行写出一行，整块画布不会同时出现在内存里
+ */
+@Component
+public class CanvasStreamWriter {
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 每写出若干行刷新一次，客户端可以边收边渲染
+    private static final int FLUSH_EVERY = 64;
+
+    public JsonGenerator open(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    /**
+     * 写出一个完整对象为一行
+     */
+    public void writeLine(JsonGenerator generator, Object value) throws IOException {
+        generator.writeObject(value);
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * 从游标逐行写出画布的全部组件，必须在事务内调用；releasedOnly 时不写出未公开遗产的遗产项
+     */
+    public void writeFromCursors(JsonGenerator generator, CanvasVO header, boolean releasedOnly)
+            throws IOException {
+        long pid = header.getId();
+        writeHeader(generator, header);
+        try (Cursor<?> cursor = canvasMapper.streamImages(pid)) {
+            writeAll(generator, "image", cursor);
+        }
+        try (Cursor<?> cursor = canvasMapper.streamTexts(pid)) {
+            writeAll(generator, "text", cursor);
+        }
+        try (Cursor<?> cursor = canvasMapper.streamMarkdowns(pid)) {
+            writeAll(generator, "markdown", cursor);
+        }
+        try (Cursor<?> cursor = canvasMapper.streamHeritages(pid)) {
+            writeAll(generator, "heritage", cursor);
+        }
+        try (Cursor<?> cursor = canvasMapper.streamHeritageItems(pid, releasedOnly)) {
+            writeAll(generator, "heritageItem", cursor);
+        }
+        generator.flush();
+    }
+
+    /**
+     * 画布已在缓存中时按同样的格式写出
+     */
+    public void writeFromMemory(JsonGenerator generator, CanvasVO canvasVO, boolean releasedOnly)
+            throws IOException {
+        writeHeader(generator, canvasVO);
+        writeAll(generator, "image", canvasVO.getImages());
+        writeAll(generator, "text", canvasVO.getTexts());
+        writeAll(generator, "markdown", canvasVO.getMarkdowns());
+        int lines = 0;
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            // 遗产项单独成行，遗产行不重复携带
+            writeEntry(generator, "heritage", withoutItems(heritage));
+            if (++lines % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        }
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            List<HeritageItem> items = heritage.getItems();
+            if (items != null && !(releasedOnly && Boolean.FALSE.equals(heritage.getReleased()))) {
+                writeAll(generator, "heritageItem", items);
+            }
+        }
+        generator.flush();
+    }
+
+    private void writeHeader(JsonGenerator generator, CanvasVO canvasVO) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "canvas");
+        generator.writeObjectFieldStart("data");
+        generator.writeNumberField("id", canvasVO.getId());
+        generator.writeNumberField("userId", canvasVO.getUserId());
+        generator.writeStringField("title", canvasVO.getTitle());
+        generator.writeNumberField("isPublic", canvasVO.getIsPublic());
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        // 先把基本信息发出去，首字节不必等组件查询
+        generator.flush();
+    }
+
+    private void writeAll(JsonGenerator generator, String type, Iterable<?> rows) throws IOException {
+        int lines = 0;
+        for (Object row : rows) {
+            writeEntry(generator, type, row);
+            if (++lines % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        }
+    }
+
+    private void writeEntry(JsonGenerator generator, String type, Object data) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", type);
+        generator.writeObjectField("data", data);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static Heritage withoutItems(Heritage heritage) {
+        Heritage copy = new Heritage();
+        copy.setId(heritage.getId());
+        copy.setPid(heritage.getPid());
+        copy.setPublicTime(heritage.getPublicTime());
+        copy.setReleased(heritage.getReleased());
+        copy.setLeft(heritage.getLeft());
+        copy.setTop(heritage.getTop());
+        copy.setWidth(heritage.getWidth());
+        copy.setHeight(heritage.getHeight());
+        return copy;
+    }
+}
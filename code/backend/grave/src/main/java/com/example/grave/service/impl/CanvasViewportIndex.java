@@ -0,0 +1,339 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 画布视口查询的空间索引
+ * 每个画布按固定边长的网格建索引，组件放入与其外框相交的所有格子，视口查询只检查视口覆盖的格子；
+ * 特别大的组件（覆盖格子过多）单独存放，每次查询都检查。
+ * 索引连同组件（不含遗产项）按画布内容版本保存，版本变化即重建，按估算字节数做 LRU 淘汰，
+ * 因此超出画布读缓存的大画布每次查询也只需一次主键查询确认版本，再加载视口内遗产的遗产项
+ */
+@Component
+public class CanvasViewportIndex implements MeterBinder {
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private CanvasLoader canvasLoader;
+    @Autowired
+    private CanvasCache canvasCache;
+
+    @Value("${canvas.viewport.cell-size:512}")
+    private int cellSize;
+    @Value("${canvas.viewport.max-bytes:67108864}")
+    private long maxBytes;
+
+    // 一个组件覆盖的格子超过该数量时不放入格子
+    private static final int MAX_CELLS_PER_BOX = 256;
+
+    private final LinkedHashMap<Long, Grid> grids = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * 返回画布中与矩形 [left, left+width] x [top, top+height] 相交的组件，遗产项为当前数据；
+     * 画布不存在时返回 null。结果是新对象，调用方按权限再做过滤
+     */
+    public CanvasVO query(long canvasId, int left, int top, int width, int height) {
+        queries.increment();
+        // 读缓存中的画布是最新的（修改、领取后都会失效），直接用它确认版本
+        CanvasVO cached = canvasCache.get(canvasId);
+        CanvasVO header = cached != null ? cached : canvasMapper.getCanvasById(canvasId);
+        if (header == null) {
+            return null;
+        }
+        Grid grid = grid(canvasId, header.getVersion());
+        if (grid == null) {
+            CanvasVO canvasVO = cached != null ? cached : canvasLoader.fill(header, false);
+            grid = put(new Grid(canvasVO, cellSize));
+        }
+
+        long right = (long) left + Math.max(0, width);
+        long bottom = (long) top + Math.max(0, height);
+        List<ImageBox> images = new ArrayList<>();
+        List<TextBox> texts = new ArrayList<>();
+        List<MarkdownBox> markdowns = new ArrayList<>();
+        List<Heritage> heritages = new ArrayList<>();
+        for (Object box : grid.intersecting(left, top, right, bottom)) {
+            if (box instanceof ImageBox image) {
+                images.add(image);
+            } else if (box instanceof TextBox text) {
+                texts.add(text);
+            } else if (box instanceof MarkdownBox markdown) {
+                markdowns.add(markdown);
+            } else if (box instanceof Heritage heritage) {
+                heritages.add(heritage);
+            }
+        }
+        heritages = withCurrentItems(heritages, cached);
+
+        return CanvasVO.builder()
+                .id(header.getId())
+                .userId(header.getUserId())
+                .title(header.getTitle())
+                .isPublic(header.getIsPublic())
+                .version(header.getVersion())
+                .images(images)
+                .texts(texts)
+                .markdowns(markdowns)
+                .heritages(heritages)
+                .build();
+    }
+
+    public synchronized void invalidate(long canvasId) {
+        Grid removed = grids.remove(canvasId);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    /**
+     * 复制视口内的遗产并带上当前遗产项：缓存中有画布时取缓存中的，否则一次查询只加载这些遗产的遗产项
+     */
+    private List<Heritage> withCurrentItems(List<Heritage> heritages, CanvasVO cached) {
+        List<Heritage> copies = new ArrayList<>(heritages.size());
+        Map<Long, Heritage> current = new HashMap<>();
+        if (cached != null) {
+            for (Heritage heritage : cached.getHeritages()) {
+                current.put(heritage.getId(), heritage);
+            }
+        }
+        for (Heritage heritage : heritages) {
+            Heritage copy = new Heritage();
+            copy.setId(heritage.getId());
+            copy.setPid(heritage.getPid());
+            copy.setPublicTime(heritage.getPublicTime());
+            copy.setReleased(heritage.getReleased());
+            copy.setLeft(heritage.getLeft());
+            copy.setTop(heritage.getTop());
+            copy.setWidth(heritage.getWidth());
+            copy.setHeight(heritage.getHeight());
+            Heritage source = current.get(heritage.getId());
+            if (source != null && source.getItems() != null) {
+                copy.setItems(source.getItems());
+            }
+            copies.add(copy);
+        }
+        if (cached == null) {
+            canvasLoader.fillItems(copies);
+        }
+        for (Heritage copy : copies) {
+            if (copy.getItems() == null) {
+                copy.setItems(new ArrayList<HeritageItem>());
+            }
+        }
+        return copies;
+    }
+
+    private synchronized Grid grid(long canvasId, long version) {
+        Grid grid = grids.get(canvasId);
+        if (grid == null || grid.version != version) {
+            return null;
+        }
+        return grid;
+    }
+
+    private synchronized Grid put(Grid grid) {
+        builds.increment();
+        if (grid.weight > maxBytes) {
+            return grid;
+        }
+        Grid previous = grids.put(grid.canvasId, grid);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += grid.weight;
+        Iterator<Grid> eldest = grids.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+        }
+        return grid;
+    }
+
+    /**
+     * 单个画布的均匀网格，组件按图片、文本、markdown、遗产的顺序编号，结果按编号排序，保持原有层叠顺序
+     */
+    static final class Grid {
+        final long canvasId;
+        final long version;
+        final long weight;
+        private final int cellSize;
+        private final Object[] boxes;
+        private final int[] lefts;
+        private final int[] tops;
+        private final long[] rights;
+        private final long[] bottoms;
+        // 格子坐标 -> 与之相交的组件编号
+        private final Map<Long, int[]> cells = new HashMap<>();
+        private final int[] large;
+
+        Grid(CanvasVO canvasVO, int cellSize) {
+            this.canvasId = canvasVO.getId();
+            this.version = canvasVO.getVersion();
+            this.cellSize = Math.max(1, cellSize);
+            List<Object> all = new ArrayList<>();
+            addAll(all, canvasVO.getImages());
+            addAll(all, canvasVO.getTexts());
+            addAll(all, canvasVO.getMarkdowns());
+            addAll(all, canvasVO.getHeritages());
+            int count = all.size();
+            boxes = all.toArray();
+            lefts = new int[count];
+            tops = new int[count];
+            rights = new long[count];
+            bottoms = new long[count];
+
+            // 构建期间每个数组的第 0 位存放已用长度
+            Map<Long, int[]> building = new HashMap<>();
+            int[] largeBoxes = new int[] {0, 0, 0, 0};
+            for (int i = 0; i < count; i++) {
+                int[] bounds = bounds(boxes[i]);
+                lefts[i] = bounds[0];
+                tops[i] = bounds[1];
+                rights[i] = (long) bounds[0] + Math.max(0, bounds[2]);
+                bottoms[i] = (long) bounds[1] + Math.max(0, bounds[3]);
+                long minX = cell(lefts[i]);
+                long maxX = cell(rights[i]);
+                long minY = cell(tops[i]);
+                long maxY = cell(bottoms[i]);
+                if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_BOX) {
+                    largeBoxes = append(largeBoxes, i);
+                    continue;
+                }
+                for (long x = minX; x <= maxX; x++) {
+                    for (long y = minY; y <= maxY; y++) {
+                        building.put(key(x, y), append(building.get(key(x, y)), i));
+                    }
+                }
+            }
+            long cellBytes = 0;
+            for (Map.Entry<Long, int[]> entry : building.entrySet()) {
+                int[] ids = entry.getValue();
+                cells.put(entry.getKey(), Arrays.copyOfRange(ids, 1, ids[0] + 1));
+                cellBytes += 64 + 4L * ids[0];
+            }
+            large = Arrays.copyOfRange(largeBoxes, 1, largeBoxes[0] + 1);
+            // 组件对象按读缓存的估算方式计入，另加格子和坐标数组的开销
+            weight = CanvasCache.estimate(canvasVO) + 32L * count + cellBytes;
+        }
+
+        List<Object> intersecting(long left, long top, long right, long bottom) {
+            BitSet matched = new BitSet(boxes.length);
+            long minX = cell(left);
+            long maxX = cell(right);
+            long minY = cell(top);
+            long maxY = cell(bottom);
+            if ((maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+                // 视口覆盖的格子比已有格子还多，直接逐个检查
+                for (int i = 0; i < boxes.length; i++) {
+                    test(i, left, top, right, bottom, matched);
+                }
+            } else {
+                for (long x = minX; x <= maxX; x++) {
+                    for (long y = minY; y <= maxY; y++) {
+                        int[] ids = cells.get(key(x, y));
+                        if (ids == null) {
+                            continue;
+                        }
+                        for (int id : ids) {
+                            test(id, left, top, right, bottom, matched);
+                        }
+                    }
+                }
+                for (int id : large) {
+                    test(id, left, top, right, bottom, matched);
+                }
+            }
+            List<Object> result = new ArrayList<>(matched.cardinality());
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                result.add(boxes[i]);
+            }
+            return result;
+        }
+
+        private void test(int id, long left, long top, long right, long bottom, BitSet matched) {
+            if (lefts[id] <= right && rights[id] >= left && tops[id] <= bottom && bottoms[id] >= top) {
+                matched.set(id);
+            }
+        }
+
+        private long cell(long coordinate) {
+            return Math.floorDiv(coordinate, cellSize);
+        }
+
+        private static long key(long x, long y) {
+            return (x << 32) | (y & 0xFFFFFFFFL);
+        }
+
+        private static int[] bounds(Object box) {
+            if (box instanceof ImageBox image) {
+                return new int[] {image.getLeft(), image.getTop(), image.getWidth(), image.getHeight()};
+            }
+            if (box instanceof TextBox text) {
+                return new int[] {text.getLeft(), text.getTop(), text.getWidth(), text.getHeight()};
+            }
+            if (box instanceof MarkdownBox markdown) {
+                return new int[] {markdown.getLeft(), markdown.getTop(), markdown.getWidth(), markdown.getHeight()};
+            }
+            Heritage heritage = (Heritage) box;
+            return new int[] {heritage.getLeft(), heritage.getTop(), heritage.getWidth(), heritage.getHeight()};
+        }
+
+        private static void addAll(List<Object> all, List<?> boxes) {
+            if (boxes != null) {
+                all.addAll(boxes);
+            }
+        }
+
+        private static int[] append(int[] ids, int id) {
+            if (ids == null) {
+                ids = new int[4];
+            } else if (ids[0] + 1 == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[++ids[0]] = id;
+            return ids;
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("canvas.viewport.queries", queries, LongAdder::sum).register(registry);
+        FunctionCounter.builder("canvas.viewport.builds", builds, LongAdder::sum).register(registry);
+        Gauge.builder("canvas.viewport.index.bytes", this, index -> index.bytes()).register(registry);
+    }
+
+    public synchronized long bytes() {
+        return weight;
+    }
+}
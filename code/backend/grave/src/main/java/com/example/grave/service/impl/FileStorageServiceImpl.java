@@ -1,23 +1,56 @@
 package com.example.grave.service.impl;
 
 import com.example.grave.service.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * 内容寻址的文件存储
+ * 文件以内容的 SHA-256 命名，按哈希前两位分目录：/uploads/ab/abcdef....jpg，
+ * 重复上传同一张图片时直接返回已有路径，不再占用磁盘
+ */
 @Service
 public class FileStorageServiceImpl implements FileStorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileStorageServiceImpl.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_PREFIX = ".upload-";
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
     private final Path fileStorageLocation;
 
+    @Value("${spring.servlet.multipart.max-file-size:10MB}")
+    private DataSize maxFileSize;
+
+    @Autowired
+    private ImageVariantPipeline imageVariantPipeline;
+
     public FileStorageServiceImpl(@Value("${file.upload-dir:./uploads}") String uploadDir) {
         // 使用相对于项目的路径
         this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
@@ -25,7 +58,7 @@ public class FileStorageServiceImpl implements FileStorageService {
         try {
             // 确保目录存在，如果不存在则创建
             Files.createDirectories(this.fileStorageLocation);
-            System.out.println("文件上传目录: " + this.fileStorageLocation);
+            log.info("文件上传目录: {}", this.fileStorageLocation);
         } catch (Exception ex) {
             throw new RuntimeException("无法创建文件上传目录", ex);
         }
@@ -33,41 +66,161 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     @Override
     public String storeFile(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return storeStream(in, file.getContentType());
+        } catch (IOException ex) {
+            throw new RuntimeException("文件存储失败: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public String storeStream(InputStream in, String contentType) {
         // 检查文件类型
-        String contentType = file.getContentType();
         if (contentType == null || !contentType.startsWith("image/")) {
             throw new RuntimeException("只能上传图片文件");
         }
-        
-        // 规范化文件名
-        String originalFileName = StringUtils.cleanPath(
-            file.getOriginalFilename() != null ? file.getOriginalFilename() : "image.jpg"
-        );
-        String fileExtension = "";
-        
-        if (originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        String fileExtension = extension(contentType);
+
+        // 先写入同目录下的临时文件，算出哈希后再原子地改名，读到一半失败不会留下残缺文件
+        Path tempFile = fileStorageLocation.resolve(TEMP_PREFIX + UUID.randomUUID() + ".tmp");
+        String hash;
+        try {
+            MessageDigest digest = sha256();
+            long limit = maxFileSize.toBytes();
+            long total = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            ReadableByteChannel source = Channels.newChannel(in);
+            try (FileChannel target = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    total += buffer.remaining();
+                    if (total > limit) {
+                        throw new RuntimeException("文件大小超过限制 " + maxFileSize.toMegabytes() + "MB");
+                    }
+                    digest.update(buffer.array(), buffer.position(), buffer.remaining());
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            if (total == 0) {
+                throw new RuntimeException("文件内容为空");
+            }
+            hash = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException ex) {
+            deleteQuietly(tempFile);
+            throw new RuntimeException("文件存储失败: " + ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            deleteQuietly(tempFile);
+            throw ex;
         }
-        
-        // 生成唯一文件名
-        String fileName = UUID.randomUUID().toString() + fileExtension;
 
+        String fileName = hash + fileExtension;
+        Path targetLocation = shardDirectory(hash).resolve(fileName);
         try {
-            // 检查文件名是否包含非法字符
-            if (fileName.contains("..")) {
-                throw new RuntimeException("文件名包含非法路径序列 " + fileName);
+            if (Files.exists(targetLocation)) {
+                // 相同内容已存在，丢弃本次写入；刷新修改时间，未被引用的旧文件重新计算清理宽限期
+                deleteQuietly(tempFile);
+                touch(targetLocation);
+                log.debug("文件已存在，复用: {}", targetLocation);
+            } else {
+                Files.createDirectories(targetLocation.getParent());
+                // 并发上传同一内容时后改名的覆盖先改名的，内容相同，结果一致
+                Files.move(tempFile, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("文件已保存到: {}", targetLocation);
             }
+        } catch (IOException ex) {
+            deleteQuietly(tempFile);
+            throw new RuntimeException("文件存储失败: " + ex.getMessage(), ex);
+        }
+        // 后台生成缩略图，已生成过的会被跳过
+        imageVariantPipeline.submit(targetLocation);
 
-            // 保存文件到目标位置
-            Path targetLocation = this.fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            
-            System.out.println("文件已保存到: " + targetLocation);
+        // 返回相对路径，让前端直接使用
+        return "/uploads/" + hash.substring(0, 2) + "/" + fileName;
+    }
 
-            // 返回相对路径，让前端直接使用
-            return "/uploads/" + fileName;
+    @Override
+    public String findByHash(String sha256) {
+        if (sha256 == null) {
+            return null;
+        }
+        String hash = sha256.toLowerCase();
+        if (!SHA256_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+        Path directory = shardDirectory(hash);
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, hash + "*")) {
+            for (Path file : files) {
+                // 同一目录下还有该哈希的缩略图（abc.w320.jpg），只返回原图
+                Matcher matcher = UploadGarbageCollector.CONTENT_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches() || matcher.group(2) != null) {
+                    continue;
+                }
+                // 客户端将直接引用这个文件，与重复上传一样刷新修改时间
+                touch(file);
+                return "/uploads/" + hash.substring(0, 2) + "/" + file.getFileName();
+            }
         } catch (IOException ex) {
-            throw new RuntimeException("文件存储失败: " + ex.getMessage(), ex);
+            log.warn("查找文件失败: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private Path shardDirectory(String hash) {
+        return fileStorageLocation.resolve(hash.substring(0, 2));
+    }
+
+    /**
+     * 扩展名由文件类型决定，同一内容无论原文件名是什么都落到同一个文件
+     */
+    private static String extension(String contentType) {
+        String subtype = contentType.substring("image/".length());
+        int parameters = subtype.indexOf(';');
+        if (parameters >= 0) {
+            subtype = subtype.substring(0, parameters);
+        }
+        subtype = subtype.trim().toLowerCase();
+        switch (subtype) {
+            case "jpeg":
+            case "pjpeg":
+                return ".jpg";
+            case "svg+xml":
+                return ".svg";
+            case "x-icon":
+            case "vnd.microsoft.icon":
+                return ".ico";
+            default:
+                return subtype.matches("[a-z0-9]{1,10}") ? "." + subtype : "";
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            log.warn("刷新文件修改时间失败: {}", file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("临时文件删除失败: {}", file);
         }
     }
-} 
\ No newline at end of file
+}
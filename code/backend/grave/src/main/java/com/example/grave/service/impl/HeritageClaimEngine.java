@@ -0,0 +1,265 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.HeritageItem;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 私密遗产领取引擎
+ * 每个遗产的未领取遗产项只从数据库加载一次，打乱后放入内存池，领取时原子地弹出一项，
+ * 不再让大量请求去争抢同一行的乐观锁更新。领取结果攒批写回数据库，写入成功后才返回给用户。
+ * 领取请求由 {@link HeritageClaimQueue} 按遗产分区后调用 {@link #process}
+ */
+@Component
+public class HeritageClaimEngine implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(HeritageClaimEngine.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${heritage.claim.batch-size:200}")
+    private int batchSize;
+    @Value("${heritage.claim.flush-interval-ms:20}")
+    private long flushIntervalMs;
+    @Value("${heritage.claim.pool-idle-minutes:10}")
+    private long poolIdleMinutes;
+
+    private final Map<Long, CompletableFuture<ClaimPool>> pools = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<PendingClaim> pendingClaims = new LinkedBlockingQueue<>();
+    private SqlSessionTemplate batchSqlSession;
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder won = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    /**
+     * 一个遗产的未领取遗产项，数组只读，cursor 原子递增即完成一次领取
+     */
+    private static final class ClaimPool {
+        final HeritageItem[] items;
+        final AtomicInteger cursor = new AtomicInteger();
+        volatile long lastAccess = System.currentTimeMillis();
+
+        ClaimPool(HeritageItem[] items) {
+            this.items = items;
+        }
+
+        HeritageItem pop() {
+            lastAccess = System.currentTimeMillis();
+            if (cursor.get() >= items.length) {
+                return null;
+            }
+            int index = cursor.getAndIncrement();
+            return index < items.length ? items[index] : null;
+        }
+
+        int remaining() {
+            return Math.max(0, items.length - cursor.get());
+        }
+    }
+
+    private static final class PendingClaim {
+        final HeritageItem item;
+        final CompletableFuture<HeritageItem> future;
+
+        PendingClaim(HeritageItem item, CompletableFuture<HeritageItem> future) {
+            this.item = item;
+            this.future = future;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heritage-claim-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::evictIdlePools, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * 在当前线程上完成一次领取：弹出遗产项并加入待写回队列，写回成功后 future 才会完成
+     */
+    public void process(long heritageId, long userId, CompletableFuture<HeritageItem> future) {
+        // 随机决定是否能获得遗产（模拟"有缘"）
+        if (ThreadLocalRandom.current().nextDouble() >= 0.5) {
+            missed.increment();
+            future.complete(null);
+            return;
+        }
+        HeritageItem item = pool(heritageId).pop();
+        if (item == null) {
+            missed.increment();
+            future.complete(null);
+            return;
+        }
+        item.setUserId(userId);
+        pendingClaims.add(new PendingClaim(item, future));
+    }
+
+    /**
+     * 遗产项发生变化（追加、删除遗产）时丢弃内存池，下次领取重新加载
+     */
+    public void evict(long heritageId) {
+        pools.remove(heritageId);
+    }
+
+    private ClaimPool pool(long heritageId) {
+        CompletableFuture<ClaimPool> pool = pools.get(heritageId);
+        if (pool == null) {
+            CompletableFuture<ClaimPool> created = new CompletableFuture<>();
+            pool = pools.putIfAbsent(heritageId, created);
+            if (pool == null) {
+                pool = created;
+                try {
+                    created.complete(load(heritageId));
+                } catch (RuntimeException e) {
+                    pools.remove(heritageId, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+        return pool.join();
+    }
+
+    private ClaimPool load(long heritageId) {
+        List<HeritageItem> unclaimed = canvasMapper.getUnclaimedPrivateHeritageItems(heritageId);
+        HeritageItem[] items = unclaimed.toArray(new HeritageItem[0]);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = items.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            HeritageItem tmp = items[i];
+            items[i] = items[j];
+            items[j] = tmp;
+        }
+        return new ClaimPool(items);
+    }
+
+    /**
+     * 把攒下的领取结果合成一批乐观锁更新写回数据库，按每条的更新行数决定成败
+     */
+    private void flush() {
+        List<PendingClaim> batch = new ArrayList<>(batchSize);
+        while (pendingClaims.drainTo(batch, batchSize) > 0) {
+            try {
+                int[] counts = transactionTemplate.execute(status -> {
+                    CanvasMapper batchMapper = batchSqlSession.getMapper(CanvasMapper.class);
+                    Set<Long> heritageIds = new HashSet<>();
+                    for (PendingClaim claim : batch) {
+                        batchMapper.updateHeritageItemOwner(claim.item);
+                        heritageIds.add(claim.item.getHeritageId());
+                    }
+                    // 遗产项归属变化后画布领取计数递增，客户端缓存的 ETag 随之失效；内容版本不变，快照仍然有效。
+                    // 结果中第一组仍是领取更新
+                    batchMapper.bumpCanvasClaimsByHeritageIds(new ArrayList<>(heritageIds));
+                    List<BatchResult> results = batchSqlSession.flushStatements();
+                    return results.isEmpty() ? new int[0] : results.get(0).getUpdateCounts();
+                });
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingClaim claim = batch.get(i);
+                    // 其他节点已领取该项时更新行数为 0
+                    if (counts != null && i < counts.length && counts[i] != 0) {
+                        won.increment();
+                        claim.future.complete(claim.item);
+                    } else {
+                        lost.increment();
+                        claim.future.complete(null);
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("遗产领取写回失败，{} 个领取按失败返回: {}", batch.size(), e.getMessage());
+                for (PendingClaim claim : batch) {
+                    // 写回失败的项状态未知，丢弃内存池以便重新从数据库加载
+                    pools.remove(claim.item.getHeritageId());
+                    lost.increment();
+                    claim.future.complete(null);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void evictIdlePools() {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(poolIdleMinutes);
+        pools.entrySet().removeIf(entry -> {
+            CompletableFuture<ClaimPool> pool = entry.getValue();
+            return pool.isDone() && !pool.isCompletedExceptionally() && pool.join().lastAccess < deadline;
+        });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("heritage.claim.pending.writes", pendingClaims, LinkedBlockingQueue::size)
+                .register(registry);
+        Gauge.builder("heritage.claim.pools", pools, Map::size).register(registry);
+        Gauge.builder("heritage.claim.pool.remaining", this, engine -> engine.remaining()).register(registry);
+        FunctionCounter.builder("heritage.claim.results", won, LongAdder::sum)
+                .tag("result", "won").register(registry);
+        FunctionCounter.builder("heritage.claim.results", missed, LongAdder::sum)
+                .tag("result", "missed").register(registry);
+        FunctionCounter.builder("heritage.claim.results", lost, LongAdder::sum)
+                .tag("result", "lost").register(registry);
+    }
+
+    private long remaining() {
+        long remaining = 0;
+        for (CompletableFuture<ClaimPool> pool : pools.values()) {
+            if (pool.isDone() && !pool.isCompletedExceptionally()) {
+                remaining += pool.join().remaining();
+            }
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.grave.service.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 遗产定时公开
+ * 公开时间未到的遗产在表中 released = false，读取时只看这个标记。
+ * 内存里只放未来一个时间窗口内到期的遗产（DelayQueue），窗口按固定间隔从 (released, public_time) 索引续装，
+ * 内存占用与待公开遗产总数无关；保存、修改遗产后由 {@link #schedule} 直接加入窗口。
+ * 到期时批量改标记，失效并重新加载缓存中的画布，丢弃领取内存池，再通知订阅者（协同编辑房间）
+ */
+@Component
+public class HeritageReleaseScheduler implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(HeritageReleaseScheduler.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private CanvasSnapshotStore canvasSnapshotStore;
+    @Autowired
+    private CanvasCache canvasCache;
+    @Autowired
+    private HeritageClaimEngine heritageClaimEngine;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${heritage.release.window-minutes:10}")
+    private long windowMinutes;
+    @Value("${heritage.release.batch-size:500}")
+    private int batchSize;
+
+    private static final int SCAN_PAGE_SIZE = 1000;
+
+    private final DelayQueue<PendingRelease> queue = new DelayQueue<>();
+    // 遗产ID -> 排队中的到期时间；公开时间被修改后旧的队列项与这里不一致，到期时直接丢弃
+    private final Map<Long, Long> scheduled = new ConcurrentHashMap<>();
+    // 到期时间不晚于该值的遗产都已装入队列，之后的由下一次续装负责
+    private volatile long loadedUntil;
+    private final List<BiConsumer<Long, List<Long>>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService loader;
+    private Thread worker;
+
+    private final LongAdder released = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private record PendingRelease(long heritageId, long due) implements Delayed {
+        @Override
+        public long getDelay(@NonNull TimeUnit unit) {
+            return unit.convert(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(@NonNull Delayed other) {
+            return Long.compare(due, ((PendingRelease) other).due);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        loader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heritage-release-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 每半个窗口续装一次，保证任何时刻队列里都有至少半个窗口的遗产
+        long period = Math.max(1, TimeUnit.MINUTES.toSeconds(windowMinutes) / 2);
+        loader.scheduleWithFixedDelay(this::loadWindow, 0, period, TimeUnit.SECONDS);
+        worker = new Thread(this::run, "heritage-release");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+        worker.interrupt();
+    }
+
+    /**
+     * 注册公开通知，参数为画布ID和该画布中本次公开的遗产ID
+     */
+    public void addListener(BiConsumer<Long, List<Long>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 遗产保存或修改公开时间并提交后调用，窗口内到期的直接入队，更晚的留给续装
+     */
+    public void schedule(List<Heritage> heritages) {
+        for (Heritage heritage : heritages) {
+            if (heritage.getId() == null || !Boolean.FALSE.equals(heritage.getReleased())
+                    || heritage.getPublicTime() == null) {
+                continue;
+            }
+            long due = heritage.getPublicTime().getTime();
+            if (due <= loadedUntil) {
+                enqueue(heritage.getId(), due);
+            }
+        }
+    }
+
+    private void enqueue(long heritageId, long due) {
+        Long previous = scheduled.put(heritageId, due);
+        if (previous == null || previous != due) {
+            queue.add(new PendingRelease(heritageId, due));
+        }
+    }
+
+    /**
+     * 从数据库续装到期时间在窗口内的未公开遗产，已在队列中的不会重复加入
+     */
+    private void loadWindow() {
+        long until = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(windowMinutes);
+        // 先推进上界再扫描，扫描期间提交的遗产由 schedule 入队，不会两边都漏掉
+        loadedUntil = until;
+        try {
+            Date afterTime = null;
+            long afterId = 0;
+            List<Heritage> page;
+            do {
+                page = canvasMapper.scanPendingReleases(new Date(until), afterTime, afterId, SCAN_PAGE_SIZE);
+                for (Heritage heritage : page) {
+                    afterTime = heritage.getPublicTime();
+                    afterId = heritage.getId();
+                    enqueue(heritage.getId(), heritage.getPublicTime().getTime());
+                }
+            } while (page.size() == SCAN_PAGE_SIZE);
+        } catch (RuntimeException e) {
+            log.warn("待公开遗产加载失败: {}", e.getMessage());
+        }
+    }
+
+    private void run() {
+        List<PendingRelease> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                // 同一时刻到期的一起处理，合成一条更新
+                queue.drainTo(batch, batchSize - 1);
+                release(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failed.add(batch.size());
+                log.warn("遗产公开失败: {}", e.getMessage());
+                // 标记仍为未公开，下一次续装会重新入队
+                for (PendingRelease pending : batch) {
+                    scheduled.remove(pending.heritageId, pending.due);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void release(List<PendingRelease> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (PendingRelease pending : batch) {
+            if (scheduled.remove(pending.heritageId, pending.due)) {
+                ids.add(pending.heritageId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        // 以数据库中的公开时间为准，期间被改晚或删除的遗产不会查出来；
+        // 其他节点已经改过标记时这里仍然查得到，各节点都会刷新自己的缓存和连接
+        List<Heritage> due = canvasMapper.getDueHeritages(ids, new Date());
+        if (due.isEmpty()) {
+            return;
+        }
+        List<Long> dueIds = new ArrayList<>(due.size());
+        Map<Long, List<Long>> byCanvas = new LinkedHashMap<>();
+        for (Heritage heritage : due) {
+            dueIds.add(heritage.getId());
+            byCanvas.computeIfAbsent(heritage.getPid(), pid -> new ArrayList<>()).add(heritage.getId());
+        }
+        // 公开标记在画布快照中，版本递增后快照在下次读取时重建；两者同一事务，不会出现已公开但版本未变的画布
+        transactionTemplate.executeWithoutResult(status -> {
+            canvasMapper.releaseHeritages(dueIds);
+            canvasMapper.bumpCanvasVersionsByHeritageIds(dueIds);
+        });
+        released.add(dueIds.size());
+
+        for (Map.Entry<Long, List<Long>> entry : byCanvas.entrySet()) {
+            long canvasId = entry.getKey();
+            entry.getValue().forEach(heritageClaimEngine::evict);
+            warm(canvasId);
+            for (BiConsumer<Long, List<Long>> listener : listeners) {
+                try {
+                    listener.accept(canvasId, entry.getValue());
+                } catch (RuntimeException e) {
+                    log.warn("遗产公开通知失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 画布在缓存中时立即重新加载，公开后的第一波访问不会同时打到数据库
+     */
+    private void warm(long canvasId) {
+        boolean cached = canvasCache.get(canvasId) != null;
+        canvasCache.invalidate(canvasId);
+        if (!cached) {
+            return;
+        }
+        long stamp = canvasCache.stamp();
+        canvasCache.put(canvasSnapshotStore.load(canvasId), stamp);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("heritage.release.pending", queue, DelayQueue::size).register(registry);
+        FunctionCounter.builder("heritage.release.results", released, LongAdder::sum)
+                .tag("result", "released").register(registry);
+        FunctionCounter.builder("heritage.release.results", failed, LongAdder::sum)
+                .tag("result", "failed").register(registry);
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.grave.service.impl;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 图片缩略图流水线
+ * 上传完成后在后台按固定宽度生成缩小版本，与原图放在同一目录：abc.jpg -> abc.w320.jpg。
+ * 工作线程和排队数都有上限，队列满时直接丢弃，之后有人请求该尺寸时会重新排队。
+ * 先写临时文件再原子改名，读取方不会看到写了一半的图片
+ */
+@Component
+public class ImageVariantPipeline implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantPipeline.class);
+
+    @Value("${image.variant.widths:320,640,1280}")
+    private int[] widths;
+    @Value("${image.variant.workers:2}")
+    private int workers;
+    @Value("${image.variant.queue-capacity:100}")
+    private int queueCapacity;
+
+    private static final int DONE_CACHE_SIZE = 10000;
+
+    private ThreadPoolExecutor executor;
+    // 正在排队或处理中的原图
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    // 已处理过的原图，原图比某个宽度还窄时不会有对应版本，记下来避免反复排队
+    private final Map<Path, Boolean> done = new ConcurrentHashMap<>();
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        widths = Arrays.stream(widths).filter(width -> width > 0).sorted().distinct().toArray();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "image-variant-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 为原图排队生成所有宽度的版本，已在排队中或格式不支持时忽略
+     */
+    public void submit(Path original) {
+        if (format(original) == null || done.containsKey(original) || !inFlight.add(original)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(original);
+                } finally {
+                    inFlight.remove(original);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(original);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 返回不小于请求宽度的最小已生成版本；没有合适宽度或尚未生成时返回原图，并为原图排队生成
+     */
+    public Path resolve(Path original, int requestedWidth) {
+        if (requestedWidth <= 0 || format(original) == null) {
+            return original;
+        }
+        for (int width : widths) {
+            if (width >= requestedWidth) {
+                Path variant = variantPath(original, width);
+                if (Files.exists(variant)) {
+                    return variant;
+                }
+                submit(original);
+                return original;
+            }
+        }
+        return original;
+    }
+
+    /**
+     * 原图被删除后调用，之后重新上传同一内容时重新生成各宽度版本
+     */
+    public void forget(Path original) {
+        done.remove(original);
+    }
+
+    private void generate(Path original) {
+        String format = format(original);
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            if (input == null) {
+                return;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int[] targets = Arrays.stream(widths)
+                        .filter(width -> width < sourceWidth && !Files.exists(variantPath(original, width)))
+                        .toArray();
+                if (targets.length > 0) {
+                    // 按最大目标宽度的两倍做降采样解码，大图不必完整解码到内存
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    int subsampling = Math.max(1, sourceWidth / (targets[targets.length - 1] * 2));
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    BufferedImage source = reader.read(0, param);
+                    for (int width : targets) {
+                        write(scale(source, width, format), format, variantPath(original, width));
+                        generated.increment();
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+            if (done.size() >= DONE_CACHE_SIZE) {
+                done.clear();
+            }
+            done.put(original, Boolean.TRUE);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            log.warn("缩略图生成失败: {} {}", original, e.getMessage());
+        }
+    }
+
+    /**
+     * 逐次减半缩小到目标宽度，比一次性缩小锯齿更少
+     */
+    private static BufferedImage scale(BufferedImage source, int width, String format) {
+        int type = "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            int nextWidth = Math.max(width, currentWidth / 2);
+            int nextHeight = Math.max(1, (int) Math.round((double) source.getHeight() * nextWidth / source.getWidth()));
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+        } while (currentWidth > width);
+        return current;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        Path temp = target.resolveSibling(".variant-" + UUID.randomUUID() + ".tmp");
+        try {
+            if (!ImageIO.write(image, format, temp.toFile())) {
+                throw new IOException("不支持的图片格式 " + format);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static Path variantPath(Path original, int width) {
+        String name = original.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return original.resolveSibling(name.substring(0, dot) + ".w" + width + name.substring(dot));
+    }
+
+    /**
+     * 只处理 ImageIO 能读写的静态格式，gif（可能是动图）、webp、svg 等直接使用原图
+     */
+    private static String format(Path original) {
+        String name = original.getFileName().toString().toLowerCase();
+        if (name.matches(".*\\.w\\d+\\.[a-z]+")) {
+            return null;
+        }
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "jpg";
+        }
+        if (name.endsWith(".png")) {
+            return "png";
+        }
+        return null;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("image.variant.queue.depth", executor, pool -> pool.getQueue().size()).register(registry);
+        FunctionCounter.builder("image.variant.tasks", generated, LongAdder::sum)
+                .tag("result", "generated").register(registry);
+        FunctionCounter.builder("image.variant.tasks", failed, LongAdder::sum)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("image.variant.tasks", dropped, LongAdder::sum)
+                .tag("result", "dropped").register(registry);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.grave.service.impl;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.pojo.entity.HeritageClaimResult;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.HeritageRequest;
+import com.example.grave.service.HeritageClaimQueue;
+
+/**
+ * Kafka 领取队列（heritage.claim.queue=kafka）
+ * 请求以 heritageId 为 key 发送，同一遗产落在同一分区、由消费组内唯一的消费者处理；
+ * 结果发到结果主题，每个节点用独立的消费组订阅，完成本节点上等待中的 future
+ */
+@Component
+@ConditionalOnProperty(name = "heritage.claim.queue", havingValue = "kafka")
+public class KafkaHeritageClaimQueue implements HeritageClaimQueue {
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    private HeritageClaimEngine heritageClaimEngine;
+
+    @Value("${kafka.topics.heritage-requests}")
+    private String heritageRequestsTopic;
+    @Value("${kafka.topics.heritage-results}")
+    private String heritageResultsTopic;
+    @Value("${heritage.claim.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // 等待结果的请求，key 为 requestId
+    private final ConcurrentMap<String, CompletableFuture<HeritageItem>> pendingRequests = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<HeritageItem> submit(HeritageRequest request) {
+        String requestId = UUID.randomUUID().toString();
+        request.setRequestId(requestId);
+        CompletableFuture<HeritageItem> future = new CompletableFuture<>();
+        pendingRequests.put(requestId, future);
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((item, e) -> pendingRequests.remove(requestId));
+        kafkaTemplate.send(heritageRequestsTopic, String.valueOf(request.getHeritageId()), request)
+                .whenComplete((sendResult, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    }
+                });
+        return future;
+    }
+
+    @KafkaListener(topics = "${kafka.topics.heritage-requests}", groupId = "${spring.kafka.consumer.group-id}")
+    public void processHeritageRequest(@Payload HeritageRequest request) {
+        CompletableFuture<HeritageItem> result = new CompletableFuture<>();
+        heritageClaimEngine.process(request.getHeritageId(), request.getUserId(), result);
+        result.whenComplete((item, e) -> kafkaTemplate.send(heritageResultsTopic, request.getRequestId(),
+                new HeritageClaimResult(request.getRequestId(), e == null ? item : null)));
+    }
+
+    @KafkaListener(topics = "${kafka.topics.heritage-results}", groupId = "heritage-results-${random.uuid}")
+    public void processHeritageResult(@Payload HeritageClaimResult result) {
+        // 完成对应的CompletableFuture，其他节点发起的请求在这里找不到，直接忽略
+        CompletableFuture<HeritageItem> future = pendingRequests.remove(result.getRequestId());
+        if (future != null) {
+            future.complete(result.getItem());
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.grave.service.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 公开画布ID的内存采样索引
+ * 用紧凑的 long 数组保存所有公开画布ID，随机抽样每次 O(1)，替代 ORDER BY RAND() 全表排序。
+ * 启动后由后台线程从数据库分页加载（失败时定时重试），之后由保存、删除增量维护；
+ * 加载期间的增删先记下来，加载完成时在同一把锁内补上，抽样退化为取最新的公开画布；
+ * 记下的增删超过上限时清空索引，下次重试重新扫描。加载完成后停止后台线程
+ */
+@Component
+public class PublicCanvasIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicCanvasIndex.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+
+    private static final int SCAN_PAGE_SIZE = 10000;
+    private static final long RETRY_SECONDS = 30;
+    private static final int MAX_CHANGES_DURING_LOAD = 100_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] ids = new long[1024];
+    private int size;
+    // 画布ID -> 在 ids 中的下标，删除时与末尾元素交换
+    private LongIntMap positions = new LongIntMap();
+    // 加载完成前的增删，画布ID -> 是否公开，同一画布后到的覆盖先到的
+    private final Map<Long, Boolean> changesDuringLoad = new LinkedHashMap<>();
+    // 加载期间的增删超过上限后不再记录，本轮加载作废
+    private boolean changesOverflowed;
+    private volatile boolean loaded;
+    private ScheduledExecutorService loader;
+
+    @PostConstruct
+    public void init() {
+        loader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "public-canvas-index-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loader.scheduleWithFixedDelay(this::loadQuietly, 0, RETRY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 随机取出最多 count 个互不相同的公开画布ID；索引尚未加载完成时返回最新的公开画布
+     */
+    public long[] sample(int count) {
+        if (!loaded) {
+            return canvasMapper.getLatestPublicCanvasIds(count).stream().mapToLong(Long::longValue).toArray();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        lock.readLock().lock();
+        try {
+            if (size <= count) {
+                long[] all = Arrays.copyOf(ids, size);
+                for (int i = all.length - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    long tmp = all[i];
+                    all[i] = all[j];
+                    all[j] = tmp;
+                }
+                return all;
+            }
+            long[] picked = new long[count];
+            int[] used = new int[count];
+            int n = 0;
+            while (n < count) {
+                int index = random.nextInt(size);
+                boolean duplicate = false;
+                for (int i = 0; i < n; i++) {
+                    if (used[i] == index) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if (!duplicate) {
+                    used[n] = index;
+                    picked[n++] = ids[index];
+                }
+            }
+            return picked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 画布变为公开（新建公开画布）时加入索引
+     */
+    public void add(long canvasId) {
+        if (canvasId <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                recordChange(canvasId, true);
+                return;
+            }
+            insert(canvasId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 画布删除或转为私密时移出索引
+     */
+    public void remove(long canvasId) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                recordChange(canvasId, false);
+                return;
+            }
+            delete(canvasId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recordChange(long canvasId, boolean isPublic) {
+        if (changesOverflowed) {
+            return;
+        }
+        if (changesDuringLoad.size() >= MAX_CHANGES_DURING_LOAD && !changesDuringLoad.containsKey(canvasId)) {
+            changesDuringLoad.clear();
+            changesOverflowed = true;
+            return;
+        }
+        changesDuringLoad.put(canvasId, isPublic);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(long canvasId) {
+        if (positions.get(canvasId) >= 0) {
+            return;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size] = canvasId;
+        positions.put(canvasId, size);
+        size++;
+    }
+
+    private void delete(long canvasId) {
+        int index = positions.remove(canvasId);
+        if (index < 0) {
+            return;
+        }
+        int last = --size;
+        if (index != last) {
+            long moved = ids[last];
+            ids[index] = moved;
+            positions.put(moved, index);
+        }
+    }
+
+    private void loadQuietly() {
+        if (loaded) {
+            return;
+        }
+        try {
+            load();
+            if (loaded) {
+                // 之后由保存、删除增量维护，不再需要定时加载
+                loader.shutdown();
+            }
+        } catch (RuntimeException e) {
+            log.warn("公开画布索引加载失败，{} 秒后重试: {}", RETRY_SECONDS, e.getMessage());
+        }
+    }
+
+    /**
+     * 查询时不持锁，每页只在写锁内插入；扫描期间的增删记在 changesDuringLoad 中，全部页插入后再合并
+     */
+    void load() {
+        // 按主键分页扫描，走 (isPublic, id) 覆盖索引，内存占用与表大小无关
+        long afterId = 0;
+        List<Long> page;
+        do {
+            page = canvasMapper.scanPublicCanvasIds(afterId, SCAN_PAGE_SIZE);
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    return;
+                }
+                for (Long id : page) {
+                    insert(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1);
+            }
+        } while (page.size() == SCAN_PAGE_SIZE);
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (changesOverflowed) {
+                // 扫描期间的增删没有记全，已插入的ID可能过期，清空后等下次重试重新扫描
+                ids = new long[1024];
+                size = 0;
+                positions = new LongIntMap();
+                changesOverflowed = false;
+                log.warn("公开画布索引加载期间的修改超过 {} 个，{} 秒后重新扫描", MAX_CHANGES_DURING_LOAD, RETRY_SECONDS);
+                return;
+            }
+            for (Map.Entry<Long, Boolean> change : changesDuringLoad.entrySet()) {
+                if (change.getValue()) {
+                    insert(change.getKey());
+                } else {
+                    delete(change.getKey());
+                }
+            }
+            changesDuringLoad.clear();
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("公开画布索引加载完成，共 {} 个画布", size);
+    }
+
+    /**
+     * long -> int 的开放寻址哈希表，key 为 0 表示空槽（画布ID均为正数），避免 Long/Integer 装箱
+     */
+    static final class LongIntMap {
+        private long[] keys = new long[2048];
+        private int[] values = new int[2048];
+        private int count;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ((count + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            count++;
+        }
+
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int removed = values[i];
+            // 后移删除：把后续同簇元素前移，保持线性探测链连续
+            int gap = i;
+            for (int j = (gap + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            count--;
+            return removed;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            count = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
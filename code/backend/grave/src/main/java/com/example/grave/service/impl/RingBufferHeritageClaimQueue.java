@@ -0,0 +1,129 @@
+package com.example.grave.service.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.HeritageRequest;
+import com.example.grave.service.HeritageClaimQueue;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 进程内领取队列（默认）
+ * 按 heritageId 取模分到固定数量的分区，每个分区是一个定长环形缓冲区加一个消费线程，
+ * 同一遗产的领取总在同一线程上串行执行。缓冲区写满时立即拒绝，返回 503
+ */
+@Component
+@ConditionalOnProperty(name = "heritage.claim.queue", havingValue = "memory", matchIfMissing = true)
+public class RingBufferHeritageClaimQueue implements HeritageClaimQueue, MeterBinder {
+
+    @Autowired
+    private HeritageClaimEngine heritageClaimEngine;
+
+    @Value("${heritage.claim.partitions:8}")
+    private int partitionCount;
+    @Value("${heritage.claim.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private Partition[] partitions;
+    private final LongAdder rejected = new LongAdder();
+
+    private static final class Task {
+        final HeritageRequest request;
+        final CompletableFuture<HeritageItem> future;
+
+        Task(HeritageRequest request, CompletableFuture<HeritageItem> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+    private final class Partition implements Runnable {
+        // ArrayBlockingQueue 即定长数组上的环形缓冲区
+        final ArrayBlockingQueue<Task> buffer = new ArrayBlockingQueue<>(queueCapacity);
+        final Thread consumer;
+        volatile boolean running = true;
+
+        Partition(int index) {
+            Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+            consumer = builder.name("heritage-claim-" + index).unstarted(this);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Task task;
+                try {
+                    task = buffer.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    heritageClaimEngine.process(task.request.getHeritageId(), task.request.getUserId(), task.future);
+                } catch (RuntimeException e) {
+                    task.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i);
+            partitions[i].consumer.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.running = false;
+            partition.consumer.interrupt();
+        }
+    }
+
+    @Override
+    public CompletableFuture<HeritageItem> submit(HeritageRequest request) {
+        CompletableFuture<HeritageItem> future = new CompletableFuture<>();
+        Partition partition = partitions[Math.floorMod(Long.hashCode(request.getHeritageId()), partitions.length)];
+        if (!partition.buffer.offer(new Task(request, future))) {
+            rejected.increment();
+            future.completeExceptionally(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "领取人数过多，请稍后再试"));
+        }
+        return future;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("heritage.claim.queue.depth", this, queue -> queue.depth()).register(registry);
+        FunctionCounter.builder("heritage.claim.rejected", rejected, LongAdder::sum).register(registry);
+    }
+
+    private int depth() {
+        int depth = 0;
+        for (Partition partition : partitions) {
+            depth += partition.buffer.size();
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.grave.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 上传文件的下载服务
+ * Tomcat 支持时交给连接器用 sendfile 发送，否则用 FileChannel.transferTo 写出；
+ * 支持单段 Range、If-None-Match/If-Range，以内容哈希命名的文件按不可变资源缓存一年
+ */
+@Component
+public class UploadFileServer implements MeterBinder {
+
+    @Autowired
+    private ImageVariantPipeline imageVariantPipeline;
+
+    private final Path uploadRoot;
+
+    // 文件名为内容的 SHA-256（缩略图带 .w宽度），内容永不变化
+    private static final Pattern CONTENT_NAME = Pattern.compile("([0-9a-f]{64})(\\.w\\d+)?(\\.[a-z0-9]+)?");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final LongAdder full = new LongAdder();
+    private final LongAdder partial = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder unsatisfiable = new LongAdder();
+    private final LongAdder sendfileBytes = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+
+    public UploadFileServer(@Value("${file.upload-dir:./uploads}") String uploadDir) {
+        this.uploadRoot = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param relativePath /uploads/ 之后的路径
+     */
+    public void serve(HttpServletRequest request, HttpServletResponse response, String relativePath)
+            throws IOException {
+        Path file = locate(relativePath);
+        if (file == null) {
+            notFound.increment();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        boolean variantFallback = false;
+        String width = request.getParameter("w");
+        if (width != null) {
+            try {
+                Path resolved = imageVariantPipeline.resolve(file, Integer.parseInt(width));
+                // 缩略图尚未生成时返回的原图不能被长期缓存，否则生成后客户端也拿不到
+                variantFallback = resolved.equals(file);
+                file = resolved;
+            } catch (NumberFormatException e) {
+                // 非法宽度按原图处理
+            }
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        String fileName = file.getFileName().toString();
+        Matcher contentName = CONTENT_NAME.matcher(fileName);
+        boolean immutable = contentName.matches() && !variantFallback;
+        String etag = contentName.matches()
+                ? "\"" + contentName.group(1) + (contentName.group(2) != null ? contentName.group(2) : "") + "\""
+                : "\"" + Long.toHexString(length) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable ? IMMUTABLE : REVALIDATE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, attributes.lastModifiedTime().toMillis());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            notModified.increment();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            Matcher matcher = RANGE.matcher(range.trim());
+            // 只支持单段范围，多段范围和无法解析的范围按完整响应处理
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())
+                    && matcher.group(1).length() < 19 && matcher.group(2).length() < 19) {
+                if (matcher.group(1).isEmpty()) {
+                    long suffix = Long.parseLong(matcher.group(2));
+                    start = Math.max(0, length - suffix);
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) {
+                        end = Math.min(end, Long.parseLong(matcher.group(2)));
+                    }
+                }
+                if (start >= length || start > end) {
+                    unsatisfiable.increment();
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        if (response.getStatus() == HttpServletResponse.SC_PARTIAL_CONTENT) {
+            partial.increment();
+        } else {
+            full.increment();
+        }
+
+        long count = end - start + 1;
+        response.setContentType(MediaTypeFactory.getMediaType(fileName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由 Tomcat 在响应提交后直接从文件发送到套接字，不经过用户态缓冲区
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            sendfileBytes.add(count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            copiedBytes.add(count - remaining);
+        }
+    }
+
+    /**
+     * 解析为上传目录内的普通文件，越出目录、隐藏文件（上传中的临时文件）和目录都视为不存在
+     */
+    private Path locate(String relativePath) {
+        if (relativePath == null || relativePath.isEmpty()) {
+            return null;
+        }
+        Path file = uploadRoot.resolve(relativePath).normalize();
+        if (!file.startsWith(uploadRoot) || file.getFileName().toString().startsWith(".")
+                || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return file;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("upload.serve.requests", full, LongAdder::sum)
+                .tag("status", "200").register(registry);
+        FunctionCounter.builder("upload.serve.requests", partial, LongAdder::sum)
+                .tag("status", "206").register(registry);
+        FunctionCounter.builder("upload.serve.requests", notModified, LongAdder::sum)
+                .tag("status", "304").register(registry);
+        FunctionCounter.builder("upload.serve.requests", notFound, LongAdder::sum)
+                .tag("status", "404").register(registry);
+        FunctionCounter.builder("upload.serve.requests", unsatisfiable, LongAdder::sum)
+                .tag("status", "416").register(registry);
+        FunctionCounter.builder("upload.serve.bytes", sendfileBytes, LongAdder::sum)
+                .tag("transfer", "sendfile").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("upload.serve.bytes", copiedBytes, LongAdder::sum)
+                .tag("transfer", "channel").baseUnit("bytes").register(registry);
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.grave.service.impl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 无引用上传文件的清理
+ * file.gc.enabled=true 时按固定间隔运行一轮：先收集自动保存队列和协同编辑房间中尚未落库的组件引用的地址，
+ * 再按ID分页扫描图片框地址以及正文中的 /uploads/ 地址，得到引用集合，
+ * 再逐个目录遍历上传目录，删除没有被引用且修改时间早于宽限期的文件。
+ * 文件按内容哈希命名，同一哈希的原图和各宽度缩略图（abc.w320.jpg）一起保留或一起删除；
+ * 重复上传同一内容会刷新修改时间，刚上传还没保存到画布的文件在宽限期内不会被删。
+ * 以 . 开头的是上传和缩略图的临时文件，超过宽限期说明写入中途进程退出，同样清理。
+ * 检查和删除文件按 files-per-second 限速，分页查询之间也计入限速，不与线上请求争抢磁盘和数据库
+ */
+@Component
+public class UploadGarbageCollector implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(UploadGarbageCollector.class);
+
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private ImageVariantPipeline imageVariantPipeline;
+    @Autowired
+    private CanvasAutosaveQueue canvasAutosaveQueue;
+    @Autowired
+    private CanvasCollabService canvasCollabService;
+
+    @Value("${file.gc.enabled:false}")
+    private boolean enabled;
+    @Value("${file.gc.interval-minutes:360}")
+    private long intervalMinutes;
+    @Value("${file.gc.grace-hours:24}")
+    private long graceHours;
+    @Value("${file.gc.page-size:1000}")
+    private int pageSize;
+    @Value("${file.gc.files-per-second:200}")
+    private int filesPerSecond;
+    @Value("${file.gc.dry-run:false}")
+    private boolean dryRun;
+
+    private final Path uploadRoot;
+
+    // 内容寻址的文件名：哈希、可选的 .w宽度、扩展名
+    static final Pattern CONTENT_NAME = Pattern.compile("([0-9a-f]{64})(\\.w\\d+)?(\\.[a-z0-9]+)?");
+    private static final Pattern UPLOAD_URL = Pattern.compile("/uploads/([^\\s\"'()<>\\[\\]?#]+)");
+
+    private ScheduledExecutorService collector;
+    private long nextPermitNanos;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder deletedBytes = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile int lastReferences;
+
+    public UploadGarbageCollector(@Value("${file.upload-dir:./uploads}") String uploadDir) {
+        this.uploadRoot = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-gc");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        collector.scheduleWithFixedDelay(this::collectQuietly, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (collector != null) {
+            collector.shutdownNow();
+        }
+    }
+
+    private void collectQuietly() {
+        try {
+            collect();
+        } catch (RuntimeException | IOException e) {
+            log.warn("上传文件清理失败: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 运行一轮清理，返回删除（dry-run 时为应删除）的文件数
+     */
+    public synchronized int collect() throws IOException, InterruptedException {
+        if (!Files.isDirectory(uploadRoot)) {
+            return 0;
+        }
+        // 宽限期从扫描引用之前算起，扫描期间新上传并引用的文件一定比截止时间新
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(graceHours);
+        Set<String> references = references();
+        lastReferences = references.size();
+        int removed = sweep(uploadRoot, references, cutoff);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(uploadRoot, Files::isDirectory)) {
+            for (Path directory : entries) {
+                removed += sweep(directory, references, cutoff);
+            }
+        }
+        runs.increment();
+        log.info("上传文件清理完成，引用 {} 个，{} {} 个文件", references.size(), dryRun ? "应删除" : "删除", removed);
+        return removed;
+    }
+
+    private Set<String> references() throws InterruptedException {
+        Set<String> references = new HashSet<>();
+        // 先读内存中的内容：读完之后才落库的组件ID更大，分页扫描仍会读到
+        for (CanvasDTO canvas : canvasAutosaveQueue.pendingCanvases()) {
+            reference(canvas.getImages(), references);
+            reference(canvas.getTexts(), references);
+            reference(canvas.getMarkdowns(), references);
+            reference(canvas.getHeritages(), references);
+        }
+        canvasCollabService.forEachBox(box -> reference(box, references));
+        scan(canvasMapper::scanImageUrls, ImageBox::getId, ImageBox::getImageUrl, true, references);
+        scan(canvasMapper::scanTextsWithUploads, TextBox::getId, TextBox::getContent, false, references);
+        scan(canvasMapper::scanMarkdownsWithUploads, MarkdownBox::getId, MarkdownBox::getContent, false,
+                references);
+        scan(canvasMapper::scanHeritageItemsWithUploads, HeritageItem::getId, HeritageItem::getContent, false,
+                references);
+        return references;
+    }
+
+    private static void reference(List<?> boxes, Set<String> references) {
+        if (boxes != null) {
+            boxes.forEach(box -> reference(box, references));
+        }
+    }
+
+    private static void reference(Object box, Set<String> references) {
+        if (box instanceof ImageBox image) {
+            collect(image.getImageUrl(), true, references);
+        } else if (box instanceof TextBox text) {
+            collect(text.getContent(), false, references);
+        } else if (box instanceof MarkdownBox markdown) {
+            collect(markdown.getContent(), false, references);
+        } else if (box instanceof Heritage heritage && heritage.getItems() != null) {
+            for (HeritageItem item : heritage.getItems()) {
+                collect(item.getContent(), false, references);
+            }
+        }
+    }
+
+    private interface PageQuery<T> {
+        List<T> page(long afterId, int limit);
+    }
+
+    private <T> void scan(PageQuery<T> query, Function<T, Long> id, Function<T, String> text, boolean address,
+                          Set<String> references) throws InterruptedException {
+        long afterId = 0;
+        while (true) {
+            acquire();
+            List<T> rows = query.page(afterId, pageSize);
+            for (T row : rows) {
+                collect(text.apply(row), address, references);
+            }
+            if (rows.size() < pageSize) {
+                return;
+            }
+            afterId = id.apply(rows.get(rows.size() - 1));
+        }
+    }
+
+    /**
+     * @param address 字段本身就是一个地址（图片框），没有 /uploads/ 前缀时按整个值取文件名
+     */
+    private static void collect(String value, boolean address, Set<String> references) {
+        if (value == null) {
+            return;
+        }
+        Matcher matcher = UPLOAD_URL.matcher(value);
+        boolean found = false;
+        while (matcher.find()) {
+            references.add(key(matcher.group(1)));
+            found = true;
+        }
+        if (!found && address && !value.isEmpty()) {
+            references.add(key(value));
+        }
+    }
+
+    /**
+     * 清理一个目录中的文件，不进入子目录
+     */
+    private int sweep(Path directory, Set<String> references, long cutoff)
+            throws IOException, InterruptedException {
+        // 同一哈希的原图和缩略图在同一目录，按哈希分组，组内最新的修改时间决定是否过了宽限期
+        Map<String, List<Path>> groups = new HashMap<>();
+        Map<String, Long> newest = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path file : entries) {
+                acquire();
+                scanned.increment();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // 遍历期间被删除或改名
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                String key = name.startsWith(".") ? name : key(name);
+                if (references.contains(key)) {
+                    continue;
+                }
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(file);
+                newest.merge(key, attributes.lastModifiedTime().toMillis(), Math::max);
+                sizes.put(file, attributes.size());
+            }
+        }
+        int removed = 0;
+        for (Map.Entry<String, List<Path>> group : groups.entrySet()) {
+            if (newest.get(group.getKey()) >= cutoff) {
+                continue;
+            }
+            for (Path file : group.getValue()) {
+                acquire();
+                if (dryRun) {
+                    log.info("无引用的上传文件: {}", file);
+                    removed++;
+                    continue;
+                }
+                try {
+                    if (Files.deleteIfExists(file)) {
+                        deleted.increment();
+                        deletedBytes.add(sizes.get(file));
+                        imageVariantPipeline.forget(file);
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    failed.increment();
+                    log.warn("删除上传文件失败: {} {}", file, e.getMessage());
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 引用与文件的对应键：内容寻址的文件取哈希，缩略图与原图同键；其他文件取文件名
+     */
+    static String key(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        Matcher matcher = CONTENT_NAME.matcher(name);
+        return matcher.matches() ? matcher.group(1) : name;
+    }
+
+    /**
+     * 每检查或删除一个文件、每查询一页取一个许可，平均不超过 files-per-second 次
+     */
+    private void acquire() throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, filesPerSecond);
+        long now = System.nanoTime();
+        // 空闲后不积攒许可，避免之后突发
+        nextPermitNanos = Math.max(nextPermitNanos, now);
+        long wait = nextPermitNanos - now;
+        nextPermitNanos += interval;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("upload.gc.runs", runs, LongAdder::sum).register(registry);
+        FunctionCounter.builder("upload.gc.files", scanned, LongAdder::sum)
+                .tag("result", "scanned").register(registry);
+        FunctionCounter.builder("upload.gc.files", deleted, LongAdder::sum)
+                .tag("result", "deleted").register(registry);
+        FunctionCounter.builder("upload.gc.files", failed, LongAdder::sum)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("upload.gc.deleted.bytes", deletedBytes, LongAdder::sum).register(registry);
+        Gauge.builder("upload.gc.references", this, gc -> gc.lastReferences).register(registry);
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.grave.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import com.example.grave.mapper.UserMapper;
+import com.example.grave.pojo.entity.User;
+import com.example.grave.pojo.vo.UserVO;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 用户目录
+ * 用户名布隆过滤器回答“一定未被注册”，注册时大部分用户名检查不必查库；
+ * 另有按ID和用户名的有界 LRU 近缓存，登录和获取用户信息命中时不查库。
+ * 布隆过滤器首次使用时从数据库分页构建，之后由注册增量维护；
+ * 其他节点注册的用户名可能不在本机过滤器中，由 user 表的唯一索引兜底
+ */
+@Component
+public class UserDirectory implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDirectory.class);
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Value("${user.directory.expected-users:100000}")
+    private long expectedUsers;
+    @Value("${user.directory.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    @Value("${user.directory.cache-size:10000}")
+    private int cacheSize;
+
+    private static final int SCAN_PAGE_SIZE = 10000;
+
+    private volatile BloomFilter usernames;
+    private final Object loadLock = new Object();
+    // 用户ID -> 用户，按访问顺序淘汰；用户名 -> 用户ID 与之同步增删。缓存中的对象只读
+    private final LinkedHashMap<Long, UserVO> byId = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Long> byUsername = new LinkedHashMap<>();
+
+    private final LongAdder bloomNegative = new LongAdder();
+    private final LongAdder bloomPositive = new LongAdder();
+    private final LongAdder bloomFalsePositive = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 用户名是否已被注册；过滤器判定不存在时直接返回，否则查缓存或数据库确认
+     */
+    public boolean isTaken(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (!filter().mightContain(username)) {
+            bloomNegative.increment();
+            return false;
+        }
+        bloomPositive.increment();
+        if (findByUsername(username) != null) {
+            return true;
+        }
+        bloomFalsePositive.increment();
+        return false;
+    }
+
+    public UserVO findByUsername(String username) {
+        synchronized (this) {
+            Long id = byUsername.get(username);
+            UserVO cached = id == null ? null : byId.get(id);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        UserVO userVO = userMapper.getUserByUsername(username);
+        put(userVO);
+        return userVO;
+    }
+
+    public UserVO findById(Long userId) {
+        synchronized (this) {
+            UserVO cached = byId.get(userId);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        UserVO userVO = userMapper.getUserById(userId);
+        put(userVO);
+        return userVO;
+    }
+
+    /**
+     * 注册成功后调用
+     */
+    public void registered(UserVO userVO) {
+        BloomFilter filter = usernames;
+        if (filter != null) {
+            filter.add(userVO.getUsername());
+        }
+        put(userVO);
+    }
+
+    private synchronized void put(UserVO userVO) {
+        if (userVO == null || userVO.getId() == null) {
+            return;
+        }
+        UserVO previous = byId.put(userVO.getId(), userVO);
+        if (previous != null) {
+            byUsername.remove(previous.getUsername());
+        }
+        byUsername.put(userVO.getUsername(), userVO.getId());
+        if (byId.size() > cacheSize) {
+            Map.Entry<Long, UserVO> eldest = byId.entrySet().iterator().next();
+            byId.remove(eldest.getKey());
+            byUsername.remove(eldest.getValue().getUsername());
+        }
+    }
+
+    private BloomFilter filter() {
+        BloomFilter filter = usernames;
+        if (filter != null) {
+            return filter;
+        }
+        synchronized (loadLock) {
+            if (usernames != null) {
+                return usernames;
+            }
+            // 容量至少为现有用户数的两倍，留出注册增长的余量
+            long capacity = Math.max(expectedUsers, userMapper.countUsers() * 2);
+            filter = new BloomFilter(capacity, falsePositiveRate);
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = userMapper.scanUsernames(afterId, SCAN_PAGE_SIZE);
+                for (User user : page) {
+                    filter.add(user.getUsername());
+                    afterId = user.getId();
+                }
+            } while (page.size() == SCAN_PAGE_SIZE);
+            usernames = filter;
+            log.info("用户名布隆过滤器加载完成，容量 {}，占用 {} 字节", capacity, filter.sizeInBytes());
+            return filter;
+        }
+    }
+
+    /**
+     * 标准布隆过滤器，位数组 m = -n·ln(p)/ln²2，哈希函数个数 k = m/n·ln2，
+     * k 个位置由两个 64 位哈希双重散列得到
+     */
+    static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        BloomFilter(long expected, double fpp) {
+            long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, (m + 63) / 64 * 64);
+            this.bits = new AtomicLongArray((int) (bitCount / 64));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+        }
+
+        void add(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash ^ 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < hashCount; i++) {
+                long index = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash ^ 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < hashCount; i++) {
+                long index = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBytes() {
+            return bitCount / 8;
+        }
+
+        // FNV-1a 后再做一次 64 位混合，用户名前缀相同时也能分散开；
+        // 用户名列的排序规则不区分大小写，哈希前统一转小写
+        private static long hash(String value) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= Character.toLowerCase(value.charAt(i));
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("user.directory.bloom", bloomNegative, LongAdder::sum)
+                .tag("result", "negative").register(registry);
+        FunctionCounter.builder("user.directory.bloom", bloomPositive, LongAdder::sum)
+                .tag("result", "positive").register(registry);
+        FunctionCounter.builder("user.directory.bloom", bloomFalsePositive, LongAdder::sum)
+                .tag("result", "false_positive").register(registry);
+        FunctionCounter.builder("user.directory.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("user.directory.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss").register(registry);
+        Gauge.builder("user.directory.cache.size", this, directory -> directory.size()).register(registry);
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+}
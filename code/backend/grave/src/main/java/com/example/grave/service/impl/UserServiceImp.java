@@ -1,11 +1,13 @@
 package com.example.grave.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 import com.example.grave.mapper.UserMapper;
 import com.example.grave.pojo.dto.UserLoginDTO;
 import com.example.grave.pojo.dto.UserRegisterDTO;
+import com.example.grave.pojo.entity.User;
 import com.example.grave.pojo.vo.UserVO;
 import com.example.grave.service.UserService;
 
@@ -14,11 +16,13 @@ public class UserServiceImp implements UserService {
 
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private UserDirectory userDirectory;
     @Override
     public UserVO login(UserLoginDTO userLoginDTO) {
         // TODO Auto-generated method stub
         //
-        UserVO uservo = userMapper.getUserByUsername(userLoginDTO.getUsername());
+        UserVO uservo = userDirectory.findByUsername(userLoginDTO.getUsername());
         if(uservo == null||(!uservo.getPassword().equals(userLoginDTO.getPassword()))){
             UserVO userVO = new UserVO();
             userVO.setId(-1L);
@@ -32,19 +36,38 @@ public class UserServiceImp implements UserService {
 
     @Override
     public UserVO register(UserRegisterDTO userRegisterDTO) {
-        UserVO uservo = userMapper.getUserByUsername(userRegisterDTO.getUsername());
-        if(uservo != null){
+        // 布隆过滤器判定未注册时不查库
+        if(userDirectory.isTaken(userRegisterDTO.getUsername())){
+            UserVO userVO = new UserVO();
+            userVO.setId(-1L);
+            return userVO;
+        }
+        User user = new User();
+        user.setUsername(userRegisterDTO.getUsername());
+        user.setPassword(userRegisterDTO.getPassword());
+        try {
+            userMapper.register(user);
+        } catch (DuplicateKeyException e) {
+            // 并发注册或其他节点刚注册的同名用户，由唯一索引拦下
             UserVO userVO = new UserVO();
             userVO.setId(-1L);
             return userVO;
         }
-        UserVO userVO = userMapper.register(userRegisterDTO);
+        UserVO registered = new UserVO();
+        registered.setId(user.getId());
+        registered.setUsername(user.getUsername());
+        registered.setPassword(user.getPassword());
+        userDirectory.registered(registered);
+
+        UserVO userVO = new UserVO();
+        userVO.setId(user.getId());
+        userVO.setUsername(user.getUsername());
         return userVO;
     }
 
     @Override
     public UserVO getUserInfo(Long userId) {
-        UserVO userVO = userMapper.getUserById(userId);
+        UserVO userVO = userDirectory.findById(userId);
         return userVO;
     }
     
@@ -0,0 +1,130 @@
+package com.example.grave;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+
+/**
+ * 画布保存吞吐量随遗产数量变化的基准，对比逐个遗产插入与批量事务保存
+ * 运行：mvn test -Dbenchmark=true -Dtest=CanvasSaveBenchmarkTests
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:grave;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql"
+})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CanvasSaveBenchmarkTests {
+
+    private static final int ITEMS_PER_HERITAGE = 5;
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 100;
+
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private CanvasMapper canvasMapper;
+
+    @Test
+    void batchedSaveKeepsGeneratedKeys() {
+        CanvasDTO canvasDTO = canvas(10);
+        canvasService.saveCanvas(canvasDTO, false);
+
+        CanvasVO canvasVO = canvasService.getCanvasById(-1, canvasDTO.getId());
+        assertNotNull(canvasVO);
+        assertEquals(10, canvasVO.getHeritages().size());
+        for (Heritage heritage : canvasVO.getHeritages()) {
+            assertEquals(ITEMS_PER_HERITAGE, heritage.getItems().size());
+        }
+    }
+
+    @Test
+    void saveThroughputByHeritageCount() {
+        System.out.printf("%-10s %15s %15s%n", "heritages", "legacy save/s", "batched save/s");
+        for (int heritageCount : new int[] {1, 10, 50, 200}) {
+            for (int i = 0; i < WARMUP; i++) {
+                legacySave(canvas(heritageCount));
+                canvasService.saveCanvas(canvas(heritageCount), false);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                legacySave(canvas(heritageCount));
+            }
+            double legacy = ROUNDS / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                canvasService.saveCanvas(canvas(heritageCount), false);
+            }
+            double batched = ROUNDS / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%-10d %15.1f %15.1f%n", heritageCount, legacy, batched);
+        }
+    }
+
+    /**
+     * 原有保存方式：每个遗产单独插入以取得ID，再单独插入其遗产项
+     */
+    private void legacySave(CanvasDTO canvasDTO) {
+        canvasMapper.saveCanvas(canvasDTO);
+        canvasMapper.insertTextBoxes(canvasDTO);
+        for (Heritage heritage : canvasDTO.getHeritages()) {
+            heritage.setPid(canvasDTO.getId());
+            canvasMapper.insertHeritages(heritage);
+            canvasMapper.insertHeritageItems(heritage);
+        }
+    }
+
+    private static CanvasDTO canvas(int heritageCount) {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setUserId(1);
+        canvasDTO.setTitle("benchmark");
+        canvasDTO.setIsPublic(1);
+        List<TextBox> texts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TextBox text = new TextBox();
+            text.setContent("这是一个文本框");
+            text.setWidth(200);
+            text.setHeight(50);
+            texts.add(text);
+        }
+        canvasDTO.setTexts(texts);
+        List<Heritage> heritages = new ArrayList<>();
+        for (int i = 0; i < heritageCount; i++) {
+            Heritage heritage = new Heritage();
+            heritage.setLeft(i);
+            heritage.setWidth(300);
+            heritage.setHeight(200);
+            // 原有保存方式不经过 markReleased，直接插入时列不能为 NULL
+            heritage.setReleased(true);
+            List<HeritageItem> items = new ArrayList<>();
+            for (int j = 0; j < ITEMS_PER_HERITAGE; j++) {
+                HeritageItem item = new HeritageItem();
+                item.setContent("遗产内容 " + j);
+                item.setIsPrivate(j % 2 == 0);
+                items.add(item);
+            }
+            heritage.setItems(items);
+            heritages.add(heritage);
+        }
+        canvasDTO.setHeritages(heritages);
+        return canvasDTO;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.grave;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.example.grave.common.context.BaseContext;
+
+/**
+ * 平台线程池与虚拟线程两种执行模式的吞吐量和内存对比
+ * 每个任务模拟一次阻塞的 JDBC 调用；平台线程池大小与 Tomcat 默认最大线程数相同。
+ * 第二组在任务外加一个与 Hikari 默认连接池同样大小的信号量，说明虚拟线程模式下连接池才是上限
+ * 运行：mvn test -Dbenchmark=true -Dtest=ExecutionModeComparisonTests
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ExecutionModeComparisonTests {
+
+    private static final int TASKS = 10000;
+    private static final int BLOCK_MS = 20;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int HIKARI_POOL_SIZE = 10;
+
+    @Test
+    void throughputAndMemoryByExecutionMode() throws Exception {
+        System.out.printf("%-22s %12s %12s %14s%n", "mode", "tasks/s", "peak threads", "heap delta MB");
+        for (boolean pooledConnections : new boolean[] {false, true}) {
+            Semaphore connections = pooledConnections ? new Semaphore(HIKARI_POOL_SIZE) : null;
+            String suffix = pooledConnections ? " + " + HIKARI_POOL_SIZE + " conns" : "";
+            run("platform(" + TOMCAT_MAX_THREADS + ")" + suffix,
+                    () -> Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), connections);
+            run("virtual" + suffix, Executors::newVirtualThreadPerTaskExecutor, connections);
+        }
+    }
+
+    private void run(String mode, Supplier<ExecutorService> executorFactory, Semaphore connections)
+            throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        long heapBefore = usedHeap();
+        AtomicLong heapPeak = new AtomicLong(heapBefore);
+        AtomicInteger done = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(TASKS);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = executorFactory.get()) {
+            for (int i = 0; i < TASKS; i++) {
+                long userId = i;
+                executor.execute(() -> {
+                    // 与拦截器一样在请求线程上设置、结束时清除
+                    BaseContext.setCurrentId(userId);
+                    try {
+                        simulateJdbc(connections);
+                        if (BaseContext.getCurrentId() == userId) {
+                            done.incrementAndGet();
+                        }
+                        if ((userId & 255) == 0) {
+                            heapPeak.accumulateAndGet(usedHeap(), Math::max);
+                        }
+                    } finally {
+                        BaseContext.removeCurrentId();
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await(5, TimeUnit.MINUTES);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(TASKS, done.get());
+        System.out.printf("%-22s %12.0f %12d %14.1f%n", mode, TASKS / seconds, threads.getPeakThreadCount(),
+                (heapPeak.get() - heapBefore) / 1024.0 / 1024.0);
+    }
+
+    private static void simulateJdbc(Semaphore connections) {
+        try {
+            if (connections != null) {
+                connections.acquire();
+            }
+            try {
+                Thread.sleep(BLOCK_MS);
+            } finally {
+                if (connections != null) {
+                    connections.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.grave;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.service.CanvasService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 端到端压测：启动完整应用（内存 H2，真实 Tomcat 端口），用虚拟线程模拟并发客户端走 HTTP 接口
+ * 场景：首页刷新风暴（GET /user/canvas/load）、自动保存风暴（POST /user/canvas/save 覆盖保存自己的画布）、
+ * 私密遗产争抢（大量用户同时 POST /user/canvas/heritage/getheritage 领取同一遗产）。
+ * 输出吞吐量、延迟分位数、领取写回时乐观锁失败的次数和数据库连接池占用
+ * 运行：mvn test -Dbenchmark=true -Dtest=LoadScenarioTests
+ * 可调参数：-Dload.clients=64 -Dload.seconds=10 -Dload.claimers=2000 -Dload.items=100
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:grave-load;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql",
+        "logging.level.root=WARN"
+})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LoadScenarioTests {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 64);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 10);
+    private static final int CLAIMERS = Integer.getInteger("load.claimers", 2000);
+    private static final int ITEMS = Integer.getInteger("load.items", 100);
+    private static final int PUBLIC_CANVASES = 200;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Test
+    void feedStorm() throws Exception {
+        for (int i = 0; i < PUBLIC_CANVASES; i++) {
+            canvasService.saveCanvas(canvas(1, 5, 2), false);
+        }
+        Report report = runFor("feed storm", CLIENTS, SECONDS, clientIndex ->
+                HttpRequest.newBuilder(uri("/user/canvas/load")).GET().build());
+        report.print();
+        assertEquals(0, report.errors.sum());
+    }
+
+    @Test
+    void autosaveStorm() throws Exception {
+        // 每个客户端反复覆盖保存自己的画布，与前端编辑器的保存方式相同
+        long[] canvasIds = new long[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            CanvasDTO canvasDTO = canvas(userId(i), 10, 3);
+            canvasService.saveCanvas(canvasDTO, false);
+            canvasIds[i] = canvasDTO.getId();
+        }
+        Report report = runFor("autosave storm", CLIENTS, SECONDS, clientIndex -> {
+            CanvasDTO canvasDTO = canvas(userId(clientIndex), 10, 3);
+            canvasDTO.setId(canvasIds[clientIndex]);
+            return HttpRequest.newBuilder(uri("/user/canvas/save"))
+                    .header("userId", Long.toString(userId(clientIndex)))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(canvasDTO)))
+                    .build();
+        });
+        report.print();
+        assertEquals(0, report.errors.sum());
+    }
+
+    @Test
+    void heritageClaimRace() throws Exception {
+        CanvasDTO canvasDTO = canvas(1, 0, 0);
+        Heritage heritage = new Heritage();
+        heritage.setWidth(300);
+        heritage.setHeight(200);
+        List<HeritageItem> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            HeritageItem item = new HeritageItem();
+            item.setContent("私密遗产 " + i);
+            item.setIsPrivate(true);
+            items.add(item);
+        }
+        heritage.setItems(items);
+        canvasDTO.setHeritages(List.of(heritage));
+        canvasService.saveCanvas(canvasDTO, false);
+        long heritageId = heritage.getId();
+
+        double lostBefore = claimResult("lost");
+        AtomicInteger won = new AtomicInteger();
+        // 每个用户只领取一次，所有请求同时放出
+        Report report = runOnce("heritage claim race", CLAIMERS, clientIndex ->
+                HttpRequest.newBuilder(uri("/user/canvas/heritage/getheritage?heritageId=" + heritageId))
+                        .header("userId", Long.toString(userId(clientIndex)))
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build(),
+                body -> {
+                    if (body.contains("\"code\":1")) {
+                        won.incrementAndGet();
+                    }
+                });
+        report.print();
+
+        Integer owned = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM heritage_item WHERE heritage_id = ? AND user_id <> 0", Integer.class, heritageId);
+        Integer owners = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT user_id) FROM heritage_item WHERE heritage_id = ? AND user_id <> 0",
+                Integer.class, heritageId);
+        System.out.printf("  won %d / %d items, rows owned %d, distinct owners %d, lost optimistic updates %.0f%n",
+                won.get(), ITEMS, owned, owners, claimResult("lost") - lostBefore);
+        // 每个遗产项最多被领取一次，每个成功响应都对应一行
+        assertEquals(Math.min(ITEMS, CLAIMERS), won.get());
+        assertEquals(won.get(), owned);
+        assertEquals(owned, owners);
+    }
+
+    private interface RequestFactory {
+        HttpRequest create(int clientIndex) throws Exception;
+    }
+
+    private interface BodyCheck {
+        void accept(String body);
+    }
+
+    /**
+     * clients 个客户端在 seconds 秒内循环发请求
+     */
+    private Report runFor(String name, int clients, int seconds, RequestFactory requests) throws Exception {
+        Report report = new Report(name, clients);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(clients);
+        PoolSampler sampler = new PoolSampler();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                int clientIndex = i;
+                executor.execute(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    try {
+                        while (running.get()) {
+                            if (count == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, count * 2);
+                            }
+                            latencies[count++] = send(report, requests, clientIndex, null);
+                        }
+                    } finally {
+                        report.add(latencies, count);
+                        done.countDown();
+                    }
+                });
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            running.set(false);
+            done.await();
+        }
+        report.finish(System.nanoTime() - start, sampler.stop());
+        return report;
+    }
+
+    /**
+     * clients 个客户端各发一次请求，同时放出
+     */
+    private Report runOnce(String name, int clients, RequestFactory requests, BodyCheck check) throws Exception {
+        Report report = new Report(name, clients);
+        CountDownLatch ready = new CountDownLatch(1);
+        PoolSampler sampler = new PoolSampler();
+        long start;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                int clientIndex = i;
+                executor.execute(() -> {
+                    try {
+                        ready.await();
+                        report.add(new long[] {send(report, requests, clientIndex, check)}, 1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start = System.nanoTime();
+            ready.countDown();
+        }
+        report.finish(System.nanoTime() - start, sampler.stop());
+        return report;
+    }
+
+    private long send(Report report, RequestFactory requests, int clientIndex, BodyCheck check) {
+        long begin = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(requests.create(clientIndex),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                report.errors.increment();
+            } else if (check != null) {
+                check.accept(response.body());
+            }
+        } catch (Exception e) {
+            report.errors.increment();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private double claimResult(String result) {
+        FunctionCounter counter = meterRegistry.find("heritage.claim.results").tag("result", result).functionCounter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static long userId(int clientIndex) {
+        return 1000 + clientIndex;
+    }
+
+    private static CanvasDTO canvas(long userId, int texts, int heritageCount) {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setId(-1);
+        canvasDTO.setUserId(userId);
+        canvasDTO.setTitle("压测画布");
+        canvasDTO.setIsPublic(1);
+        List<TextBox> textBoxes = new ArrayList<>();
+        for (int i = 0; i < texts; i++) {
+            TextBox text = new TextBox();
+            text.setContent("这是一个文本框 " + i);
+            text.setLeft(i * 10);
+            text.setWidth(200);
+            text.setHeight(50);
+            textBoxes.add(text);
+        }
+        canvasDTO.setTexts(textBoxes);
+        List<Heritage> heritages = new ArrayList<>();
+        for (int i = 0; i < heritageCount; i++) {
+            Heritage heritage = new Heritage();
+            heritage.setWidth(300);
+            heritage.setHeight(200);
+            HeritageItem item = new HeritageItem();
+            item.setContent("遗产内容 " + i);
+            item.setIsPrivate(false);
+            heritage.setItems(new ArrayList<>(List.of(item)));
+            heritages.add(heritage);
+        }
+        canvasDTO.setHeritages(heritages);
+        return canvasDTO;
+    }
+
+    /**
+     * 每 5ms 采样一次 Hikari 连接池的活跃连接数和等待连接的线程数
+     */
+    private final class PoolSampler {
+        private final HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Thread thread;
+        private int peakActive;
+        private int peakWaiting;
+        private long activeSum;
+        private long samples;
+
+        PoolSampler() {
+            thread = Thread.ofPlatform().daemon().start(() -> {
+                while (running.get()) {
+                    int active = pool.getActiveConnections();
+                    peakActive = Math.max(peakActive, active);
+                    peakWaiting = Math.max(peakWaiting, pool.getThreadsAwaitingConnection());
+                    activeSum += active;
+                    samples++;
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        PoolSampler stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+            return this;
+        }
+
+        String summary() {
+            return String.format("connections active avg %.1f peak %d / %d, waiting peak %d",
+                    samples == 0 ? 0.0 : (double) activeSum / samples, peakActive, pool.getTotalConnections(),
+                    peakWaiting);
+        }
+    }
+
+    private static final class Report {
+        final String name;
+        final int clients;
+        final LongAdder errors = new LongAdder();
+        private long[] latencies = new long[0];
+        private int count;
+        private long elapsedNanos;
+        private PoolSampler pool;
+
+        Report(String name, int clients) {
+            this.name = name;
+            this.clients = clients;
+        }
+
+        synchronized void add(long[] values, int length) {
+            if (count + length > latencies.length) {
+                latencies = Arrays.copyOf(latencies, Math.max(count + length, latencies.length * 2));
+            }
+            System.arraycopy(values, 0, latencies, count, length);
+            count += length;
+        }
+
+        void finish(long elapsedNanos, PoolSampler pool) {
+            this.elapsedNanos = elapsedNanos;
+            this.pool = pool;
+            Arrays.sort(latencies, 0, count);
+        }
+
+        void print() {
+            assertTrue(count > 0, "no requests completed");
+            System.out.printf("%s: %d clients, %d requests, %d errors, %.0f req/s%n", name, clients, count,
+                    errors.sum(), count / (elapsedNanos / 1e9));
+            System.out.printf("  latency ms p50 %.2f p95 %.2f p99 %.2f max %.2f%n", percentile(0.50),
+                    percentile(0.95), percentile(0.99), latencies[count - 1] / 1e6);
+            System.out.println("  " + pool.summary());
+        }
+
+        private double percentile(double p) {
+            return latencies[Math.min(count - 1, (int) Math.ceil(p * count) - 1)] / 1e6;
+        }
+    }
+}
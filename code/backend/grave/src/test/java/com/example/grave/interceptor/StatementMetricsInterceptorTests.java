@@ -0,0 +1,79 @@
+package com.example.grave.interceptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StatementMetricsInterceptorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StatementMetricsInterceptor interceptor = new StatementMetricsInterceptor();
+    private final Executor executor = mock(Executor.class);
+    private final Configuration configuration = new Configuration();
+
+    StatementMetricsInterceptorTests() {
+        ReflectionTestUtils.setField(interceptor, "meterRegistry", registry);
+        ReflectionTestUtils.setField(interceptor, "repeatThreshold", 10);
+    }
+
+    private void update(String id, int times) throws Throwable {
+        MappedStatement statement = new MappedStatement.Builder(configuration, id,
+                new StaticSqlSource(configuration, "UPDATE t SET a = 1", new ArrayList<>()), SqlCommandType.UPDATE)
+                .build();
+        for (int i = 0; i < times; i++) {
+            interceptor.intercept(new Invocation(executor,
+                    Executor.class.getMethod("update", MappedStatement.class, Object.class),
+                    new Object[] {statement, null}));
+        }
+    }
+
+    private double repeated(String name) {
+        return registry.get("mybatis.statement.repeated.requests").tag("statement", name).counter().count();
+    }
+
+    @Test
+    void batchedUpdatesAreNotReportedAsRepeated() throws Throwable {
+        when(executor.update(any(), any())).thenReturn(BatchExecutor.BATCH_UPDATE_RETURN_VALUE);
+        interceptor.beginRequest();
+        update("com.example.grave.mapper.CanvasMapper.insertHeritageItems", 50);
+        interceptor.endRequest("POST", "/canvas/save");
+
+        assertEquals(0, repeated("CanvasMapper.insertHeritageItems"));
+    }
+
+    @Test
+    void repeatedSingleUpdatesAreReported() throws Throwable {
+        when(executor.update(any(), any())).thenReturn(1);
+        interceptor.beginRequest();
+        update("com.example.grave.mapper.CanvasMapper.updateTextBox", 11);
+        interceptor.endRequest("POST", "/canvas/patch");
+
+        assertEquals(1, repeated("CanvasMapper.updateTextBox"));
+        assertEquals(11, registry.get("mybatis.statement.rows").tag("statement", "CanvasMapper.updateTextBox")
+                .summary().totalAmount());
+    }
+
+    @Test
+    void callsOutsideRequestAreNotCounted() throws Throwable {
+        when(executor.update(any(), any())).thenReturn(1);
+        update("com.example.grave.mapper.CanvasMapper.updateMarkdown", 20);
+        interceptor.endRequest("POST", "/canvas/patch");
+
+        assertEquals(0, repeated("CanvasMapper.updateMarkdown"));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 预写日志恢复：模拟崩溃（不调用 shutdown）后用同一目录启动新的队列，只重放未落库的画布
+ */
+class CanvasAutosaveQueueTests {
+
+    private static final long OWNER = 1;
+
+    @TempDir
+    Path walDir;
+
+    private final List<CanvasService> services = new ArrayList<>();
+
+    @Test
+    void persistedCanvasIsNotReplayedAfterCrash() throws IOException {
+        CanvasAutosaveQueue queue = start();
+        queue.submit(canvas(1, "已落库"));
+        queue.submit(canvas(2, "未落库"));
+        queue.flush(1);
+
+        assertEquals(List.of("未落库"), replayed(start()));
+    }
+
+    @Test
+    void newerSubmitAfterPersistIsReplayed() throws IOException {
+        CanvasAutosaveQueue queue = start();
+        queue.submit(canvas(1, "第一份"));
+        queue.flush(1);
+        queue.submit(canvas(1, "第二份"));
+
+        assertEquals(List.of("第二份"), replayed(start()));
+    }
+
+    @Test
+    void discardedCanvasIsNotReplayed() throws IOException {
+        CanvasAutosaveQueue queue = start();
+        queue.submit(canvas(1, "已删除"));
+        queue.discard(1);
+
+        assertEquals(List.of(), replayed(start()));
+    }
+
+    @Test
+    void tornLastLineIsSkipped() throws IOException {
+        CanvasAutosaveQueue queue = start();
+        queue.submit(canvas(1, "完整"));
+        Files.writeString(walDir.resolve("canvas-autosave.wal"), "{\"id\":2,\"userId\":1,\"ti",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        assertEquals(List.of("完整"), replayed(start()));
+    }
+
+    @Test
+    void recoveryChainsAcrossRestarts() throws IOException {
+        CanvasAutosaveQueue queue = start();
+        queue.submit(canvas(1, "旧内容"));
+        queue.submit(canvas(2, "另一个"));
+
+        CanvasAutosaveQueue restarted = start();
+        restarted.flush(1);
+
+        assertEquals(List.of("另一个"), replayed(start()));
+    }
+
+    private CanvasAutosaveQueue start() throws IOException {
+        CanvasService canvasService = mock(CanvasService.class);
+        CanvasMapper canvasMapper = mock(CanvasMapper.class);
+        CanvasVO header = new CanvasVO();
+        header.setUserId(OWNER);
+        when(canvasMapper.getCanvasVersion(anyLong())).thenReturn(header);
+        services.add(canvasService);
+
+        CanvasAutosaveQueue queue = new CanvasAutosaveQueue();
+        ReflectionTestUtils.setField(queue, "canvasService", canvasService);
+        ReflectionTestUtils.setField(queue, "canvasMapper", canvasMapper);
+        ReflectionTestUtils.setField(queue, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(queue, "enabled", true);
+        // 后台线程不会在测试期间调度
+        ReflectionTestUtils.setField(queue, "debounceMs", 3_600_000L);
+        ReflectionTestUtils.setField(queue, "maxDelayMs", 3_600_000L);
+        ReflectionTestUtils.setField(queue, "maxPending", 100);
+        ReflectionTestUtils.setField(queue, "walDir", walDir.toString());
+        ReflectionTestUtils.setField(queue, "walMaxBytes", 1L << 20);
+        queue.init();
+        return queue;
+    }
+
+    /**
+     * 关闭恢复出来的队列，返回它写入数据库的画布标题
+     */
+    private List<String> replayed(CanvasAutosaveQueue queue) {
+        queue.shutdown();
+        CanvasService canvasService = services.get(services.size() - 1);
+        ArgumentCaptor<CanvasDTO> written = ArgumentCaptor.forClass(CanvasDTO.class);
+        verify(canvasService, atLeast(0)).replaceCanvas(written.capture());
+        return written.getAllValues().stream().map(CanvasDTO::getTitle).sorted().toList();
+    }
+
+    private static CanvasDTO canvas(long id, String title) {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setId(id);
+        canvasDTO.setUserId(OWNER);
+        canvasDTO.setTitle(title);
+        return canvasDTO;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+class CanvasCacheTests {
+
+    private final CanvasCache cache = new CanvasCache();
+
+    CanvasCacheTests() {
+        ReflectionTestUtils.setField(cache, "maxBytes", 1_000_000L);
+    }
+
+    private static CanvasVO canvas(long id, long... heritageIds) {
+        List<Heritage> heritages = new ArrayList<>();
+        for (long heritageId : heritageIds) {
+            Heritage heritage = new Heritage();
+            heritage.setId(heritageId);
+            heritage.setItems(new ArrayList<>());
+            heritages.add(heritage);
+        }
+        return CanvasVO.builder().id(id).title("t").images(new ArrayList<>()).texts(new ArrayList<>())
+                .markdowns(new ArrayList<>()).heritages(heritages).build();
+    }
+
+    @Test
+    void claimDuringLoadOfUncachedCanvasIsNotCached() {
+        long stamp = cache.stamp();
+        // 画布还不在缓存中，领取提交发生在加载期间
+        cache.invalidateHeritage(7);
+        cache.put(canvas(1, 7), stamp);
+        assertNull(cache.get(1));
+
+        cache.put(canvas(1, 7), cache.stamp());
+        assertNotNull(cache.get(1));
+    }
+
+    @Test
+    void invalidatingAnotherCanvasKeepsConcurrentLoad() {
+        long stamp = cache.stamp();
+        cache.invalidate(2);
+        cache.invalidateHeritage(99);
+        cache.put(canvas(1, 7), stamp);
+        assertNotNull(cache.get(1));
+    }
+
+    @Test
+    void invalidateDuringLoadDropsResult() {
+        long stamp = cache.stamp();
+        cache.invalidate(1);
+        cache.put(canvas(1), stamp);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void claimInvalidatesCachedOwner() {
+        cache.put(canvas(1, 7), cache.stamp());
+        cache.invalidateHeritage(7);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void loadsOlderThanTrackedHistoryAreDropped() {
+        long stamp = cache.stamp();
+        for (long id = 100; id < 100 + 5000; id++) {
+            cache.invalidate(id);
+        }
+        cache.put(canvas(1), stamp);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByWeight() {
+        CanvasVO big = canvas(1);
+        TextBox text = new TextBox();
+        text.setContent("x".repeat(200_000));
+        big.getTexts().add(text);
+        ReflectionTestUtils.setField(cache, "maxBytes", CanvasCache.estimate(big) * 2);
+        cache.put(big, cache.stamp());
+        cache.put(canvas(2), cache.stamp());
+        cache.get(1);
+        CanvasVO other = canvas(3);
+        other.setTexts(new ArrayList<>(List.of(text)));
+        cache.put(other, cache.stamp());
+        // 2 最久未使用，先被淘汰
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasOperation;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+
+/**
+ * 协同编辑房间：新组件落库后广播ID映射，整体保存或增量失败后房间以数据库为准重新同步
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:grave-collab;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql",
+        // 广播与落库由测试手动触发
+        "canvas.collab.broadcast-interval-ms=3600000",
+        "canvas.collab.flush-interval-ms=3600000"
+})
+class CanvasCollabServiceTests {
+
+    private static final long OWNER = 1;
+
+    @Autowired
+    private CanvasCollabService canvasCollabService;
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private CanvasMapper canvasMapper;
+    @Autowired
+    private CanvasCache canvasCache;
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private WebSocketSession session;
+    private long canvasId;
+
+    @AfterEach
+    void tearDown() {
+        if (session != null) {
+            canvasCollabService.leave(session, canvasId);
+        }
+    }
+
+    @Test
+    void addedBoxIsSavedAndIdMappingBroadcast() {
+        join(saveCanvas("第一段"));
+        CanvasOperation add = operation("add", null);
+        add.setContent("新的一段");
+        assertNull(canvasCollabService.apply(canvasId, OWNER, add));
+        flush();
+
+        assertEquals(2, texts().size());
+        assertTrue(sent.stream().anyMatch(message -> message.contains("\"type\":\"ids\"")));
+    }
+
+    @Test
+    void fullSaveWhileRoomIsOpenResyncsRoom() {
+        join(saveCanvas("第一段"));
+        long oldId = texts().get(0).getId();
+        CanvasOperation move = operation("move", oldId);
+        move.setLeft(500);
+        assertNull(canvasCollabService.apply(canvasId, OWNER, move));
+
+        CanvasDTO replacement = canvasDTO("整体保存的内容");
+        replacement.setId(canvasId);
+        canvasService.replaceCanvas(replacement);
+
+        assertTrue(sent.stream().anyMatch(message -> message.contains("\"type\":\"reload\"")));
+        assertEquals("组件不存在", canvasCollabService.apply(canvasId, OWNER, operation("move", oldId)));
+        long newId = texts().get(0).getId();
+        CanvasOperation moveNew = operation("move", newId);
+        moveNew.setLeft(300);
+        assertNull(canvasCollabService.apply(canvasId, OWNER, moveNew));
+        flush();
+
+        List<TextBox> texts = texts();
+        assertEquals(1, texts.size());
+        assertEquals("整体保存的内容", texts.get(0).getContent());
+        assertEquals(300, texts.get(0).getLeft());
+    }
+
+    @Test
+    void failedPatchResyncsRoomInsteadOfReportingSuccess() {
+        join(saveCanvas("第一段"));
+        long id = texts().get(0).getId();
+        // 组件在房间不知情时被删除
+        canvasMapper.deleteTextBoxesByIds(canvasId, List.of(id));
+        canvasCache.invalidate(canvasId);
+        CanvasOperation move = operation("move", id);
+        move.setLeft(500);
+        assertNull(canvasCollabService.apply(canvasId, OWNER, move));
+        flush();
+
+        assertTrue(sent.stream().anyMatch(message -> message.contains("\"type\":\"reload\"")));
+        assertEquals("组件不存在", canvasCollabService.apply(canvasId, OWNER, operation("move", id)));
+        assertTrue(texts().isEmpty());
+    }
+
+    private void join(long id) {
+        canvasId = id;
+        session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(new HashMap<>());
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s" + id);
+        try {
+            doAnswer(invocation -> {
+                sent.add(((TextMessage) invocation.getArgument(0)).getPayload());
+                return null;
+            }).when(session).sendMessage(any());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        assertTrue(canvasCollabService.join(session, canvasId));
+    }
+
+    private void flush() {
+        ReflectionTestUtils.invokeMethod(canvasCollabService, "flushAll");
+    }
+
+    private List<TextBox> texts() {
+        CanvasVO canvasVO = canvasService.getCanvasById(OWNER, canvasId);
+        return canvasVO.getTexts();
+    }
+
+    private long saveCanvas(String content) {
+        CanvasDTO canvasDTO = canvasDTO(content);
+        canvasService.saveCanvas(canvasDTO, false);
+        return canvasDTO.getId();
+    }
+
+    private static CanvasDTO canvasDTO(String content) {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setUserId(OWNER);
+        canvasDTO.setTitle("collab");
+        canvasDTO.setIsPublic(1);
+        TextBox text = new TextBox();
+        text.setContent(content);
+        text.setWidth(200);
+        text.setHeight(50);
+        canvasDTO.setTexts(new ArrayList<>(List.of(text)));
+        return canvasDTO;
+    }
+
+    private static CanvasOperation operation(String op, Long id) {
+        CanvasOperation operation = new CanvasOperation();
+        operation.setOp(op);
+        operation.setBoxType("text");
+        operation.setId(id);
+        return operation;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.BoxPatch;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.dto.CanvasPatchDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+
+/**
+ * 增量保存对已有遗产项的修改与删除：未被领取的可以改，已被领取的整个增量失败并回滚
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:grave-patch;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql"
+})
+class CanvasPatchHeritageTests {
+
+    private static final long OWNER = 1;
+
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private CanvasMapper canvasMapper;
+
+    @Test
+    void updatesAndRemovesUnclaimedItems() {
+        Heritage heritage = saveCanvasWithHeritage();
+        HeritageItem first = heritage.getItems().get(0);
+        HeritageItem second = heritage.getItems().get(1);
+
+        first.setContent("改过的内容");
+        CanvasPatchDTO patch = patch(heritage);
+        patch.setRemovedHeritageItems(List.of(second.getId()));
+        canvasService.patchCanvas(OWNER, patch);
+
+        List<HeritageItem> items = reload(heritage).getItems();
+        assertEquals(1, items.size());
+        assertEquals("改过的内容", items.get(0).getContent());
+    }
+
+    @Test
+    void editingClaimedItemRollsBackWholePatch() {
+        Heritage heritage = saveCanvasWithHeritage();
+        HeritageItem claimed = heritage.getItems().get(0);
+        claim(claimed);
+
+        claimed.setContent("想改掉已被领取的内容");
+        CanvasPatchDTO patch = patch(heritage);
+        patch.setTitle("不应生效");
+        assertThrows(RuntimeException.class, () -> canvasService.patchCanvas(OWNER, patch));
+
+        assertEquals("遗产内容 0", reload(heritage).getItems().get(0).getContent());
+        assertEquals("patch", canvasMapper.getCanvasById(heritage.getPid()).getTitle());
+    }
+
+    @Test
+    void resendingClaimedItemUnchangedIsAllowed() {
+        Heritage heritage = saveCanvasWithHeritage();
+        claim(heritage.getItems().get(0));
+        heritage.getItems().get(1).setContent("只改未领取的");
+
+        canvasService.patchCanvas(OWNER, patch(heritage));
+
+        assertEquals("只改未领取的", reload(heritage).getItems().get(1).getContent());
+    }
+
+    @Test
+    void removingClaimedItemIsRejected() {
+        Heritage heritage = saveCanvasWithHeritage();
+        HeritageItem claimed = heritage.getItems().get(0);
+        claim(claimed);
+
+        CanvasPatchDTO patch = new CanvasPatchDTO();
+        patch.setId(heritage.getPid());
+        patch.setRemovedHeritageItems(List.of(claimed.getId(), heritage.getItems().get(1).getId()));
+        assertThrows(RuntimeException.class, () -> canvasService.patchCanvas(OWNER, patch));
+
+        assertEquals(2, reload(heritage).getItems().size());
+    }
+
+    @Test
+    void patchedItemsCarryGeneratedIds() {
+        Heritage heritage = saveCanvasWithHeritage();
+        HeritageItem appended = new HeritageItem();
+        appended.setContent("追加的遗产项");
+        appended.setIsPrivate(true);
+        heritage.setItems(List.of(appended));
+        Heritage added = new Heritage();
+        added.setWidth(100);
+        added.setHeight(100);
+        HeritageItem addedItem = new HeritageItem();
+        addedItem.setContent("新遗产的遗产项");
+        addedItem.setIsPrivate(false);
+        added.setItems(List.of(addedItem));
+        CanvasPatchDTO patch = patch(heritage);
+        patch.getHeritages().setAdded(List.of(added));
+        canvasService.patchCanvas(OWNER, patch);
+
+        assertNotNull(appended.getId());
+        assertNotNull(addedItem.getId());
+        assertEquals(List.of(addedItem.getId()), reload(added).getItems().stream().map(HeritageItem::getId).toList());
+
+        // 不重新加载画布，直接用回填的ID修改和删除
+        appended.setContent("再次修改");
+        heritage.setItems(List.of(appended));
+        CanvasPatchDTO next = patch(heritage);
+        next.setRemovedHeritageItems(List.of(addedItem.getId()));
+        canvasService.patchCanvas(OWNER, next);
+
+        assertTrue(reload(heritage).getItems().stream()
+                .anyMatch(item -> item.getId().equals(appended.getId()) && item.getContent().equals("再次修改")));
+        assertEquals(List.of(), reload(added).getItems());
+    }
+
+    private Heritage saveCanvasWithHeritage() {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setUserId(OWNER);
+        canvasDTO.setTitle("patch");
+        canvasDTO.setIsPublic(0);
+        Heritage heritage = new Heritage();
+        heritage.setWidth(300);
+        heritage.setHeight(200);
+        List<HeritageItem> items = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            HeritageItem item = new HeritageItem();
+            item.setContent("遗产内容 " + i);
+            item.setIsPrivate(true);
+            items.add(item);
+        }
+        heritage.setItems(items);
+        canvasDTO.setHeritages(new ArrayList<>(List.of(heritage)));
+        canvasService.saveCanvas(canvasDTO, false);
+        heritage.setPid(canvasDTO.getId());
+        return heritage;
+    }
+
+    private void claim(HeritageItem item) {
+        HeritageItem owner = new HeritageItem();
+        owner.setId(item.getId());
+        owner.setUserId(2);
+        canvasMapper.updateHeritageItemOwner(owner);
+    }
+
+    private static CanvasPatchDTO patch(Heritage heritage) {
+        BoxPatch<Heritage> heritages = new BoxPatch<>();
+        heritages.setUpdated(List.of(heritage));
+        CanvasPatchDTO patch = new CanvasPatchDTO();
+        patch.setId(heritage.getPid());
+        patch.setHeritages(heritages);
+        return patch;
+    }
+
+    private Heritage reload(Heritage heritage) {
+        CanvasVO canvasVO = canvasService.getCanvasById(OWNER, heritage.getPid());
+        return canvasVO.getHeritages().stream()
+                .filter(h -> h.getId().equals(heritage.getId()))
+                .findFirst().orElseThrow();
+    }
+}
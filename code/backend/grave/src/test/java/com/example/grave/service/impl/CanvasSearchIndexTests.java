@@ -0,0 +1,44 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CanvasSearchIndexTests {
+
+    @Test
+    void indexesCjkUnigramsAndBigrams() {
+        assertEquals(List.of("遗", "产", "遗产", "馆", "产馆"), CanvasSearchIndex.tokens("遗产馆", false));
+    }
+
+    @Test
+    void queryUsesBigramsOnlyForRuns() {
+        assertEquals(List.of("遗产", "产馆"), CanvasSearchIndex.tokens("遗产馆", true));
+        assertEquals(List.of("遗"), CanvasSearchIndex.tokens("遗", true));
+        assertEquals(List.of("遗", "hello"), CanvasSearchIndex.tokens("遗 Hello", true));
+    }
+
+    @Test
+    void latinWordsAreLowercasedAndSplitOnPunctuation() {
+        assertEquals(List.of("hello", "world", "42"), CanvasSearchIndex.tokens("Hello, WORLD!42", false));
+    }
+
+    @Test
+    void mixedTextSwitchesBetweenScripts() {
+        assertEquals(List.of("abc", "遗", "产", "遗产", "def"), CanvasSearchIndex.tokens("abc遗产def", false));
+    }
+
+    @Test
+    void longWordsAreTruncated() {
+        String token = CanvasSearchIndex.tokens("a".repeat(100), false).get(0);
+        assertEquals(32, token.length());
+    }
+
+    @Test
+    void nullAndEmptyHaveNoTokens() {
+        assertEquals(List.of(), CanvasSearchIndex.tokens(null, false));
+        assertEquals(List.of(), CanvasSearchIndex.tokens("  ,. ", true));
+    }
+}
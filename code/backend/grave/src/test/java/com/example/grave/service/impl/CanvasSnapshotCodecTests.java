@@ -0,0 +1,189 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.CanvasSnapshot;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+class CanvasSnapshotCodecTests {
+
+    private static CanvasVO header() {
+        return CanvasVO.builder().id(7L).build();
+    }
+
+    private static CanvasVO sample() {
+        ImageBox image = new ImageBox();
+        image.setId(1L);
+        image.setImageUrl("/uploads/a.png");
+        image.setLeft(-120);
+        image.setTop(Integer.MIN_VALUE);
+        image.setWidth(Integer.MAX_VALUE);
+        image.setHeight(0);
+        TextBox nullText = new TextBox();
+        nullText.setContent(null);
+        nullText.setLeft(-1);
+        TextBox emptyText = new TextBox();
+        emptyText.setId(0L);
+        emptyText.setContent("");
+        MarkdownBox markdown = new MarkdownBox();
+        markdown.setId(Long.MAX_VALUE - 1);
+        markdown.setContent("# 标题\n正文 😀");
+        markdown.setTop(-99999);
+        Heritage scheduled = new Heritage();
+        scheduled.setId(3L);
+        scheduled.setPublicTime(new Date(1_700_000_000_000L));
+        scheduled.setReleased(false);
+        scheduled.setLeft(-5);
+        Heritage unknown = new Heritage();
+        unknown.setId(4L);
+        unknown.setReleased(null);
+        return CanvasVO.builder().id(7L)
+                .images(new ArrayList<>(List.of(image)))
+                .texts(new ArrayList<>(List.of(nullText, emptyText)))
+                .markdowns(new ArrayList<>(List.of(markdown)))
+                .heritages(new ArrayList<>(List.of(scheduled, unknown)))
+                .build();
+    }
+
+    @Test
+    void roundTripKeepsEveryField() {
+        CanvasVO original = sample();
+        CanvasVO decoded = CanvasSnapshotCodec.decode(CanvasSnapshotCodec.encode(original), header());
+
+        ImageBox image = decoded.getImages().get(0);
+        assertEquals(1L, image.getId());
+        assertEquals(7L, image.getPid());
+        assertEquals("/uploads/a.png", image.getImageUrl());
+        assertEquals(-120, image.getLeft());
+        assertEquals(Integer.MIN_VALUE, image.getTop());
+        assertEquals(Integer.MAX_VALUE, image.getWidth());
+
+        assertNull(decoded.getTexts().get(0).getId());
+        assertNull(decoded.getTexts().get(0).getContent());
+        assertEquals(-1, decoded.getTexts().get(0).getLeft());
+        assertEquals(0L, decoded.getTexts().get(1).getId());
+        assertEquals("", decoded.getTexts().get(1).getContent());
+
+        MarkdownBox markdown = decoded.getMarkdowns().get(0);
+        assertEquals(Long.MAX_VALUE - 1, markdown.getId());
+        assertEquals("# 标题\n正文 😀", markdown.getContent());
+        assertEquals(-99999, markdown.getTop());
+
+        Heritage scheduled = decoded.getHeritages().get(0);
+        assertEquals(new Date(1_700_000_000_000L), scheduled.getPublicTime());
+        assertEquals(false, scheduled.getReleased());
+        assertEquals(-5, scheduled.getLeft());
+        assertTrue(scheduled.getItems().isEmpty());
+        assertNull(decoded.getHeritages().get(1).getPublicTime());
+        assertNull(decoded.getHeritages().get(1).getReleased());
+    }
+
+    @Test
+    void emptyAndNullListsDecodeAsEmpty() {
+        CanvasVO decoded = CanvasSnapshotCodec.decode(CanvasSnapshotCodec.encode(header()), header());
+        assertTrue(decoded.getImages().isEmpty());
+        assertTrue(decoded.getTexts().isEmpty());
+        assertTrue(decoded.getMarkdowns().isEmpty());
+        assertTrue(decoded.getHeritages().isEmpty());
+    }
+
+    @Test
+    void largeCanvasRoundTrip() {
+        List<TextBox> texts = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            TextBox text = new TextBox();
+            text.setId((long) i);
+            text.setContent("文本" + i + "x".repeat(random.nextInt(200)));
+            text.setLeft(random.nextInt());
+            text.setTop(-i);
+            texts.add(text);
+        }
+        TextBox huge = new TextBox();
+        huge.setContent("遗".repeat(1_000_000));
+        texts.add(huge);
+        CanvasVO original = CanvasVO.builder().id(7L).texts(texts).build();
+
+        CanvasVO decoded = CanvasSnapshotCodec.decode(CanvasSnapshotCodec.encode(original), header());
+        assertEquals(texts.size(), decoded.getTexts().size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i).getContent(), decoded.getTexts().get(i).getContent());
+            assertEquals(texts.get(i).getLeft(), decoded.getTexts().get(i).getLeft());
+            assertEquals(texts.get(i).getTop(), decoded.getTexts().get(i).getTop());
+        }
+    }
+
+    @Test
+    void corruptDataIsRejected() {
+        byte[] data = CanvasSnapshotCodec.encode(sample());
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> CanvasSnapshotCodec.decode(truncated, header()));
+        }
+        byte[] wrongFormat = data.clone();
+        wrongFormat[0] = 9;
+        assertThrows(IllegalArgumentException.class, () -> CanvasSnapshotCodec.decode(wrongFormat, header()));
+        byte[] garbage = new byte[64];
+        new Random(2).nextBytes(garbage);
+        garbage[0] = 1;
+        assertThrows(IllegalArgumentException.class, () -> CanvasSnapshotCodec.decode(garbage, header()));
+    }
+
+    @Test
+    void storeRebuildsCorruptSnapshot() {
+        CanvasMapper canvasMapper = mock(CanvasMapper.class);
+        CanvasLoader canvasLoader = mock(CanvasLoader.class);
+        CanvasSnapshotStore store = new CanvasSnapshotStore();
+        ReflectionTestUtils.setField(store, "canvasMapper", canvasMapper);
+        ReflectionTestUtils.setField(store, "canvasLoader", canvasLoader);
+        ReflectionTestUtils.setField(store, "enabled", true);
+
+        CanvasSnapshot row = new CanvasSnapshot();
+        row.setId(7);
+        row.setVersion(3);
+        row.setSnapshotVersion(3L);
+        byte[] data = CanvasSnapshotCodec.encode(sample());
+        row.setData(Arrays.copyOf(data, data.length / 2));
+        when(canvasMapper.getCanvasSnapshots(anyList(), anyBoolean())).thenReturn(List.of(row));
+        when(canvasLoader.fill(anyList(), eq(false))).thenAnswer(invocation -> {
+            List<CanvasVO> canvasVOs = invocation.getArgument(0);
+            CanvasVO rebuilt = sample();
+            for (CanvasVO canvasVO : canvasVOs) {
+                canvasVO.setImages(rebuilt.getImages());
+                canvasVO.setTexts(rebuilt.getTexts());
+                canvasVO.setMarkdowns(rebuilt.getMarkdowns());
+                canvasVO.setHeritages(rebuilt.getHeritages());
+            }
+            return canvasVOs;
+        });
+
+        CanvasVO loaded = store.load(7);
+        assertEquals("/uploads/a.png", loaded.getImages().get(0).getImageUrl());
+        // 重建后的快照覆盖损坏的那份
+        verify(canvasMapper).saveCanvasSnapshot(eq(7L), eq(3L), any());
+    }
+}
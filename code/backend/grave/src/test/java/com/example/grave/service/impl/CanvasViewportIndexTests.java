@@ -0,0 +1,246 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+import com.example.grave.pojo.vo.CanvasVO;
+
+/**
+ * 视口查询与逐个比较组件外框的结果一致，包括负坐标、跨格子和覆盖格子过多的大组件
+ */
+class CanvasViewportIndexTests {
+
+    private static final int CELL_SIZE = 512;
+
+    private final CanvasCache canvasCache = mock(CanvasCache.class);
+    private final CanvasViewportIndex index = new CanvasViewportIndex();
+
+    CanvasViewportIndexTests() {
+        ReflectionTestUtils.setField(index, "canvasMapper", mock(CanvasMapper.class));
+        ReflectionTestUtils.setField(index, "canvasLoader", mock(CanvasLoader.class));
+        ReflectionTestUtils.setField(index, "canvasCache", canvasCache);
+        ReflectionTestUtils.setField(index, "cellSize", CELL_SIZE);
+        ReflectionTestUtils.setField(index, "maxBytes", 64L * 1024 * 1024);
+    }
+
+    @Test
+    void queryMatchesBruteForce() {
+        Random random = new Random(20240501);
+        CanvasVO canvasVO = randomCanvas(1, 1, random, 400);
+        when(canvasCache.get(1)).thenReturn(canvasVO);
+
+        for (int i = 0; i < 1000; i++) {
+            int left = random.nextInt(12000) - 6000;
+            int top = random.nextInt(12000) - 6000;
+            // 偶尔查询零宽、负宽或远大于画布的视口
+            int width = i % 50 == 0 ? random.nextInt(100_000) : random.nextInt(3000) - 100;
+            int height = i % 50 == 1 ? random.nextInt(100_000) : random.nextInt(3000) - 100;
+            CanvasVO result = index.query(1, left, top, width, height);
+            String viewport = left + "," + top + " " + width + "x" + height;
+
+            assertEquals(expected(canvasVO.getImages(), left, top, width, height), ids(result.getImages()), viewport);
+            assertEquals(expected(canvasVO.getTexts(), left, top, width, height), ids(result.getTexts()), viewport);
+            assertEquals(expected(canvasVO.getMarkdowns(), left, top, width, height), ids(result.getMarkdowns()),
+                    viewport);
+            assertEquals(expected(canvasVO.getHeritages(), left, top, width, height), ids(result.getHeritages()),
+                    viewport);
+        }
+        assertEquals(1, builds());
+    }
+
+    @Test
+    void boxesOnCellBoundariesAreFound() {
+        ImageBox straddling = image(1, -1, -1, 2, 2);
+        ImageBox edge = image(2, CELL_SIZE, 0, 0, 0);
+        ImageBox negative = image(3, -CELL_SIZE - 10, -CELL_SIZE - 10, 5, 5);
+        CanvasVO canvasVO = canvas(1, 1, List.of(straddling, edge, negative));
+        when(canvasCache.get(1)).thenReturn(canvasVO);
+
+        assertEquals(List.of(1L), ids(index.query(1, 0, 0, 0, 0).getImages()));
+        assertEquals(List.of(1L), ids(index.query(1, -1, -1, 0, 0).getImages()));
+        assertEquals(List.of(), ids(index.query(1, -2, -2, 0, 0).getImages()));
+        assertEquals(List.of(2L), ids(index.query(1, CELL_SIZE, 0, 0, 0).getImages()));
+        assertEquals(List.of(3L), ids(index.query(1, -CELL_SIZE - 5, -CELL_SIZE - 5, 0, 0).getImages()));
+        assertEquals(List.of(1L, 2L, 3L), ids(index.query(1, -1000, -1000, 2000, 2000).getImages()));
+    }
+
+    @Test
+    void newVersionRebuildsGrid() {
+        when(canvasCache.get(1)).thenReturn(canvas(1, 1, List.of(image(1, 0, 0, 10, 10))));
+        assertEquals(List.of(1L), ids(index.query(1, 0, 0, 10, 10).getImages()));
+
+        when(canvasCache.get(1)).thenReturn(canvas(1, 2, List.of(image(1, 5000, 5000, 10, 10))));
+        assertEquals(List.of(), ids(index.query(1, 0, 0, 10, 10).getImages()));
+        assertEquals(List.of(1L), ids(index.query(1, 5000, 5000, 10, 10).getImages()));
+        assertEquals(2, builds());
+    }
+
+    @Test
+    void gridsAreEvictedByBytes() {
+        Random random = new Random(7);
+        CanvasVO first = randomCanvas(1, 1, random, 200);
+        CanvasVO second = randomCanvas(2, 1, random, 200);
+        when(canvasCache.get(1)).thenReturn(first);
+        when(canvasCache.get(2)).thenReturn(second);
+        long oneGrid = new CanvasViewportIndex.Grid(first, CELL_SIZE).weight;
+        ReflectionTestUtils.setField(index, "maxBytes", oneGrid + oneGrid / 2);
+
+        index.query(1, 0, 0, 100, 100);
+        index.query(2, 0, 0, 100, 100);
+        assertTrue(index.bytes() <= oneGrid + oneGrid / 2);
+        // 第一个画布已被淘汰，再次查询重建
+        index.query(1, 0, 0, 100, 100);
+        assertEquals(3, builds());
+    }
+
+    private long builds() {
+        return ((LongAdder) ReflectionTestUtils.getField(index, "builds")).sum();
+    }
+
+    /**
+     * 逐个比较外框，与索引同样按闭区间相交、负的宽高按 0 处理
+     */
+    private static List<Long> expected(List<?> boxes, int left, int top, int width, int height) {
+        long right = (long) left + Math.max(0, width);
+        long bottom = (long) top + Math.max(0, height);
+        List<Long> ids = new ArrayList<>();
+        for (Object box : boxes) {
+            int[] b = bounds(box);
+            long boxRight = (long) b[0] + Math.max(0, b[2]);
+            long boxBottom = (long) b[1] + Math.max(0, b[3]);
+            if (b[0] <= right && boxRight >= left && b[1] <= bottom && boxBottom >= top) {
+                ids.add(id(box));
+            }
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(List<?> boxes) {
+        return boxes.stream().map(CanvasViewportIndexTests::id).toList();
+    }
+
+    private static long id(Object box) {
+        if (box instanceof ImageBox image) {
+            return image.getId();
+        }
+        if (box instanceof TextBox text) {
+            return text.getId();
+        }
+        if (box instanceof MarkdownBox markdown) {
+            return markdown.getId();
+        }
+        return ((Heritage) box).getId();
+    }
+
+    private static int[] bounds(Object box) {
+        if (box instanceof ImageBox image) {
+            return new int[] {image.getLeft(), image.getTop(), image.getWidth(), image.getHeight()};
+        }
+        if (box instanceof TextBox text) {
+            return new int[] {text.getLeft(), text.getTop(), text.getWidth(), text.getHeight()};
+        }
+        if (box instanceof MarkdownBox markdown) {
+            return new int[] {markdown.getLeft(), markdown.getTop(), markdown.getWidth(), markdown.getHeight()};
+        }
+        Heritage heritage = (Heritage) box;
+        return new int[] {heritage.getLeft(), heritage.getTop(), heritage.getWidth(), heritage.getHeight()};
+    }
+
+    /**
+     * 组件散布在原点周围，宽高多数在一两个格子内，少数为负、为 0 或大到不放入格子
+     */
+    private static CanvasVO randomCanvas(long id, long version, Random random, int count) {
+        List<ImageBox> images = new ArrayList<>();
+        List<TextBox> texts = new ArrayList<>();
+        List<MarkdownBox> markdowns = new ArrayList<>();
+        List<Heritage> heritages = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            int left = random.nextInt(10000) - 5000;
+            int top = random.nextInt(10000) - 5000;
+            int width = size(random);
+            int height = size(random);
+            if (i % 50 == 0) {
+                // 覆盖的格子超过上限，放入单独的列表
+                width = 20000 + random.nextInt(10000);
+                height = 20000 + random.nextInt(10000);
+            }
+            switch (i % 4) {
+                case 0 -> images.add(image(i, left, top, width, height));
+                case 1 -> {
+                    TextBox text = new TextBox();
+                    text.setId((long) i);
+                    text.setLeft(left);
+                    text.setTop(top);
+                    text.setWidth(width);
+                    text.setHeight(height);
+                    texts.add(text);
+                }
+                case 2 -> {
+                    MarkdownBox markdown = new MarkdownBox();
+                    markdown.setId((long) i);
+                    markdown.setLeft(left);
+                    markdown.setTop(top);
+                    markdown.setWidth(width);
+                    markdown.setHeight(height);
+                    markdowns.add(markdown);
+                }
+                default -> {
+                    Heritage heritage = new Heritage();
+                    heritage.setId((long) i);
+                    heritage.setLeft(left);
+                    heritage.setTop(top);
+                    heritage.setWidth(width);
+                    heritage.setHeight(height);
+                    heritage.setItems(new ArrayList<>());
+                    heritages.add(heritage);
+                }
+            }
+        }
+        return CanvasVO.builder().id(id).version(version).title("t").images(images).texts(texts)
+                .markdowns(markdowns).heritages(heritages).build();
+    }
+
+    private static int size(Random random) {
+        int roll = random.nextInt(100);
+        if (roll < 3) {
+            return -random.nextInt(100);
+        }
+        if (roll < 6) {
+            return 0;
+        }
+        if (roll < 10) {
+            return 10000 + random.nextInt(20000);
+        }
+        return random.nextInt(1200);
+    }
+
+    private static CanvasVO canvas(long id, long version, List<ImageBox> images) {
+        return CanvasVO.builder().id(id).version(version).title("t").images(images).texts(new ArrayList<>())
+                .markdowns(new ArrayList<>()).heritages(new ArrayList<>()).build();
+    }
+
+    private static ImageBox image(long id, int left, int top, int width, int height) {
+        ImageBox image = new ImageBox();
+        image.setId(id);
+        image.setLeft(left);
+        image.setTop(top);
+        image.setWidth(width);
+        image.setHeight(height);
+        return image;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileStorageServiceImplTests {
+
+    private static final String HASH = "ab" + "c".repeat(62);
+
+    @TempDir
+    Path uploadDir;
+
+    private FileStorageServiceImpl storage;
+    private Path shard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new FileStorageServiceImpl(uploadDir.toString());
+        shard = Files.createDirectories(uploadDir.resolve("ab"));
+    }
+
+    @Test
+    void findByHashReturnsOriginalNotVariant() throws IOException {
+        // 缩略图先于原图写入目录，遍历顺序不保证原图在前
+        for (int width : new int[] {320, 640, 1280}) {
+            Files.writeString(shard.resolve(HASH + ".w" + width + ".jpg"), "variant");
+        }
+        Files.writeString(shard.resolve(HASH + ".jpg"), "original");
+
+        assertEquals("/uploads/ab/" + HASH + ".jpg", storage.findByHash(HASH.toUpperCase()));
+    }
+
+    @Test
+    void findByHashIgnoresLeftoverVariants() throws IOException {
+        Files.writeString(shard.resolve(HASH + ".w320.jpg"), "variant");
+
+        assertNull(storage.findByHash(HASH));
+    }
+
+    @Test
+    void findByHashRejectsMalformedHash() {
+        assertNull(storage.findByHash(null));
+        assertNull(storage.findByHash("../" + HASH));
+        assertNull(storage.findByHash(HASH.substring(1)));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.Heritage;
+import com.example.grave.pojo.entity.HeritageItem;
+import com.example.grave.pojo.vo.CanvasVO;
+import com.example.grave.service.CanvasService;
+
+/**
+ * 领取引擎：每个私密遗产项只被领取一次，其他节点先领取的项在写回时判负；领取改变 ETag 但不改内容版本
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:grave-claim;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql"
+})
+class HeritageClaimEngineTests {
+
+    private static final int ITEMS = 3;
+
+    @Autowired
+    private HeritageClaimEngine heritageClaimEngine;
+    @Autowired
+    private CanvasService canvasService;
+    @Autowired
+    private CanvasMapper canvasMapper;
+
+    @Test
+    void eachItemIsClaimedOnce() throws Exception {
+        Heritage heritage = saveHeritage();
+        CanvasVO before = canvasMapper.getCanvasVersion(heritage.getPid());
+        Set<Long> wonItems = new HashSet<>();
+        // 一半的请求无缘，多试几次直到全部领完
+        for (long userId = 10; userId < 210; userId++) {
+            HeritageItem item = claim(heritage.getId(), userId);
+            if (item != null) {
+                assertTrue(wonItems.add(item.getId()));
+                assertEquals(userId, item.getUserId());
+            }
+        }
+        assertEquals(ITEMS, wonItems.size());
+        assertTrue(canvasMapper.getUnclaimedPrivateHeritageItems(heritage.getId()).isEmpty());
+
+        // 领取只递增领取计数，内容版本不变，快照不会因此过期
+        CanvasVO after = canvasMapper.getCanvasVersion(heritage.getPid());
+        assertEquals(before.getVersion(), after.getVersion());
+        assertTrue(after.getClaims() > before.getClaims());
+    }
+
+    @Test
+    void claimChangesETagButNotContentVersion() throws Exception {
+        Heritage heritage = saveHeritage();
+        long canvasId = heritage.getPid();
+        String etag = canvasService.getCanvasETag(-1, canvasId);
+        long version = canvasMapper.getCanvasVersion(canvasId).getVersion();
+        HeritageItem won = null;
+        for (long userId = 10; won == null && userId < 210; userId++) {
+            won = claim(heritage.getId(), userId);
+        }
+        assertTrue(won != null);
+        assertNotEquals(etag, canvasService.getCanvasETag(-1, canvasId));
+        assertEquals(version, canvasMapper.getCanvasVersion(canvasId).getVersion());
+    }
+
+    @Test
+    void itemsClaimedElsewhereAreLost() throws Exception {
+        Heritage heritage = saveHeritage();
+        // 先装入内存池，再由“其他节点”把数据库中的项全部领走
+        ReflectionTestUtils.invokeMethod(heritageClaimEngine, "pool", heritage.getId());
+        for (HeritageItem item : heritage.getItems()) {
+            HeritageItem owner = new HeritageItem();
+            owner.setId(item.getId());
+            owner.setUserId(99);
+            canvasMapper.updateHeritageItemOwner(owner);
+        }
+        for (long userId = 10; userId < 110; userId++) {
+            assertNull(claim(heritage.getId(), userId));
+        }
+    }
+
+    private HeritageItem claim(long heritageId, long userId) throws Exception {
+        CompletableFuture<HeritageItem> future = new CompletableFuture<>();
+        heritageClaimEngine.process(heritageId, userId, future);
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private Heritage saveHeritage() {
+        CanvasDTO canvasDTO = new CanvasDTO();
+        canvasDTO.setUserId(1);
+        canvasDTO.setTitle("claim");
+        canvasDTO.setIsPublic(1);
+        Heritage heritage = new Heritage();
+        heritage.setWidth(300);
+        heritage.setHeight(200);
+        List<HeritageItem> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            HeritageItem item = new HeritageItem();
+            item.setContent("遗产内容 " + i);
+            item.setIsPrivate(true);
+            items.add(item);
+        }
+        heritage.setItems(items);
+        canvasDTO.setHeritages(new ArrayList<>(List.of(heritage)));
+        canvasService.saveCanvas(canvasDTO, false);
+        heritage.setPid(canvasDTO.getId());
+        return heritage;
+    }
+}
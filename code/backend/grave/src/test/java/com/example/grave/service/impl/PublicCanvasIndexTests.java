@@ -0,0 +1,97 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+
+class PublicCanvasIndexTests {
+
+    private final CanvasMapper canvasMapper = mock(CanvasMapper.class);
+    private final PublicCanvasIndex index = new PublicCanvasIndex();
+
+    PublicCanvasIndexTests() {
+        ReflectionTestUtils.setField(index, "canvasMapper", canvasMapper);
+    }
+
+    @Test
+    void changesDuringLoadAreKept() {
+        when(canvasMapper.scanPublicCanvasIds(anyLong(), anyInt())).thenAnswer(invocation -> {
+            // 扫描进行中时另一个请求公开了 100、删除了 2
+            index.add(100);
+            index.remove(2);
+            return List.of(1L, 2L, 3L);
+        });
+        index.load();
+
+        assertTrue(index.isLoaded());
+        long[] all = index.sample(10);
+        Arrays.sort(all);
+        assertArrayEquals(new long[] {1, 3, 100}, all);
+    }
+
+    @Test
+    void sampleBeforeLoadFallsBackToLatest() {
+        when(canvasMapper.getLatestPublicCanvasIds(eq(2))).thenReturn(List.of(9L, 8L));
+        assertArrayEquals(new long[] {9, 8}, index.sample(2));
+    }
+
+    @Test
+    void sampleReturnsDistinctIds() {
+        when(canvasMapper.scanPublicCanvasIds(anyLong(), anyInt())).thenReturn(
+                LongStream.rangeClosed(1, 50).boxed().toList());
+        index.load();
+        for (int i = 0; i < 100; i++) {
+            long[] picked = index.sample(20);
+            assertEquals(20, Arrays.stream(picked).distinct().count());
+        }
+        for (long id = 1; id <= 45; id++) {
+            index.remove(id);
+        }
+        long[] rest = index.sample(20);
+        Arrays.sort(rest);
+        assertArrayEquals(new long[] {46, 47, 48, 49, 50}, rest);
+    }
+
+    @Test
+    void tooManyChangesDuringLoadTriggerRescan() {
+        when(canvasMapper.scanPublicCanvasIds(anyLong(), anyInt())).thenAnswer(invocation -> {
+            for (long id = 1000; id <= 101_000; id++) {
+                index.add(id);
+            }
+            return List.of(1L, 2L);
+        }).thenReturn(List.of(1L, 2L, 3L));
+        index.load();
+        assertFalse(index.isLoaded());
+        assertEquals(0, index.size());
+
+        index.load();
+        assertTrue(index.isLoaded());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void loaderStopsAfterLoad() throws InterruptedException {
+        when(canvasMapper.scanPublicCanvasIds(anyLong(), anyInt())).thenReturn(List.of(1L));
+        index.init();
+        ScheduledExecutorService loader = (ScheduledExecutorService) ReflectionTestUtils.getField(index, "loader");
+        assertTrue(loader.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(index.isLoaded());
+    }
+}
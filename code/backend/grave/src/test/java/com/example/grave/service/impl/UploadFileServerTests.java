@@ -0,0 +1,93 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class UploadFileServerTests {
+
+    @TempDir
+    Path uploadDir;
+
+    private UploadFileServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.writeString(uploadDir.resolve("a.txt"), "0123456789");
+        Files.writeString(uploadDir.resolve(".upload.tmp"), "partial");
+        server = new UploadFileServer(uploadDir.toString());
+    }
+
+    private MockHttpServletResponse get(String name, String range) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + name);
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        server.serve(request, response, name);
+        return response;
+    }
+
+    @Test
+    void closedRange() throws IOException {
+        MockHttpServletResponse response = get("a.txt", "bytes=2-5");
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("2345", response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void openAndSuffixRanges() throws IOException {
+        assertEquals("789", get("a.txt", "bytes=7-").getContentAsString(StandardCharsets.UTF_8));
+        assertEquals("789", get("a.txt", "bytes=-3").getContentAsString(StandardCharsets.UTF_8));
+        // 超过文件长度的后缀和结束位置都截到文件范围内
+        assertEquals("0123456789", get("a.txt", "bytes=-100").getContentAsString(StandardCharsets.UTF_8));
+        assertEquals("bytes 8-9/10", get("a.txt", "bytes=8-100").getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void unsatisfiableRange() throws IOException {
+        MockHttpServletResponse response = get("a.txt", "bytes=10-");
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(416, get("a.txt", "bytes=5-2").getStatus());
+    }
+
+    @Test
+    void unsupportedRangesServeWholeFile() throws IOException {
+        for (String range : new String[] {"bytes=0-1,3-4", "bytes=-", "items=0-1", "bytes=99999999999999999999-"}) {
+            MockHttpServletResponse response = get("a.txt", range);
+            assertEquals(200, response.getStatus(), range);
+            assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE), range);
+            assertEquals("0123456789", response.getContentAsString(StandardCharsets.UTF_8), range);
+        }
+    }
+
+    @Test
+    void staleIfRangeServesWholeFile() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/a.txt");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"old\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        server.serve(request, response, "a.txt");
+        assertEquals(200, response.getStatus());
+        assertEquals(10, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void hiddenAndEscapingPathsAreNotFound() throws IOException {
+        assertEquals(404, get(".upload.tmp", null).getStatus());
+        assertEquals(404, get("../a.txt", null).getStatus());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.grave.mapper.CanvasMapper;
+import com.example.grave.pojo.dto.CanvasDTO;
+import com.example.grave.pojo.entity.ImageBox;
+import com.example.grave.pojo.entity.MarkdownBox;
+import com.example.grave.pojo.entity.TextBox;
+
+class UploadGarbageCollectorTests {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+    private static final String C = "c".repeat(64);
+    private static final long OLD = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(48);
+
+    @TempDir
+    Path uploadDir;
+
+    private final CanvasMapper canvasMapper = mock(CanvasMapper.class);
+    private final CanvasAutosaveQueue canvasAutosaveQueue = mock(CanvasAutosaveQueue.class);
+    private final CanvasCollabService canvasCollabService = mock(CanvasCollabService.class);
+    private final List<Object> roomBoxes = new ArrayList<>();
+    private UploadGarbageCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        collector = new UploadGarbageCollector(uploadDir.toString());
+        ReflectionTestUtils.setField(collector, "canvasMapper", canvasMapper);
+        ReflectionTestUtils.setField(collector, "imageVariantPipeline", mock(ImageVariantPipeline.class));
+        ReflectionTestUtils.setField(collector, "canvasAutosaveQueue", canvasAutosaveQueue);
+        ReflectionTestUtils.setField(collector, "canvasCollabService", canvasCollabService);
+        ReflectionTestUtils.setField(collector, "graceHours", 24L);
+        ReflectionTestUtils.setField(collector, "pageSize", 1000);
+        ReflectionTestUtils.setField(collector, "filesPerSecond", 1_000_000);
+        doAnswer(invocation -> {
+            Consumer<Object> action = invocation.getArgument(0);
+            roomBoxes.forEach(action);
+            return null;
+        }).when(canvasCollabService).forEachBox(any());
+    }
+
+    @Test
+    void keyGroupsVariantsWithOriginal() {
+        assertEquals(A, UploadGarbageCollector.key(A + ".jpg"));
+        assertEquals(A, UploadGarbageCollector.key(A + ".w320.jpg"));
+        assertEquals(A, UploadGarbageCollector.key("/uploads/2024/05/" + A + ".w1280.webp"));
+        assertEquals("photo.jpg", UploadGarbageCollector.key("photo.jpg"));
+    }
+
+    @Test
+    void referenceToOriginalKeepsVariants() throws Exception {
+        Path original = file(A + ".jpg", OLD);
+        Path variant = file(A + ".w320.jpg", OLD);
+        Path orphan = file(B + ".png", OLD);
+        Path orphanVariant = file(B + ".w640.png", OLD);
+        when(canvasMapper.scanImageUrls(anyLong(), anyInt())).thenReturn(List.of(image("/uploads/" + A + ".jpg")));
+
+        assertEquals(2, collector.collect());
+        assertTrue(Files.exists(original));
+        assertTrue(Files.exists(variant));
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(orphanVariant));
+    }
+
+    @Test
+    void freshVariantKeepsWholeGroup() throws Exception {
+        Path original = file(A + ".jpg", OLD);
+        Path variant = file(A + ".w320.jpg", System.currentTimeMillis());
+
+        assertEquals(0, collector.collect());
+        assertTrue(Files.exists(original));
+        assertTrue(Files.exists(variant));
+    }
+
+    @Test
+    void unreferencedFilesAreDeletedOnlyAfterGracePeriod() throws Exception {
+        Path fresh = file(A + ".jpg", System.currentTimeMillis());
+        Path old = file(B + ".jpg", OLD);
+        Path freshTemp = file(".upload-1.tmp", System.currentTimeMillis());
+        Path oldTemp = file(".upload-2.tmp", OLD);
+        Files.createDirectories(uploadDir.resolve("2024"));
+        Path nested = file("2024/" + C + ".gif", OLD);
+
+        assertEquals(3, collector.collect());
+        assertTrue(Files.exists(fresh));
+        assertTrue(Files.exists(freshTemp));
+        assertFalse(Files.exists(old));
+        assertFalse(Files.exists(oldTemp));
+        assertFalse(Files.exists(nested));
+    }
+
+    @Test
+    void pendingAutosaveAndCollabStateAreReferences() throws Exception {
+        Path queued = file(A + ".jpg", OLD);
+        Path inRoom = file(B + ".w320.jpg", OLD);
+        Path inMarkdown = file(C + ".png", OLD);
+        CanvasDTO canvas = new CanvasDTO();
+        canvas.setImages(List.of(image(A + ".jpg")));
+        when(canvasAutosaveQueue.pendingCanvases()).thenReturn(List.of(canvas));
+        TextBox text = new TextBox();
+        text.setContent("见 /uploads/" + B + ".jpg");
+        MarkdownBox markdown = new MarkdownBox();
+        markdown.setContent("![](/uploads/" + C + ".png)");
+        roomBoxes.add(text);
+        roomBoxes.add(markdown);
+
+        assertEquals(0, collector.collect());
+        assertTrue(Files.exists(queued));
+        assertTrue(Files.exists(inRoom));
+        assertTrue(Files.exists(inMarkdown));
+    }
+
+    private Path file(String name, long modified) throws IOException {
+        Path file = Files.writeString(uploadDir.resolve(name), name);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+
+    private static ImageBox image(String url) {
+        ImageBox image = new ImageBox();
+        image.setImageUrl(url);
+        return image;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.grave.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class UserDirectoryTests {
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        UserDirectory.BloomFilter filter = new UserDirectory.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    void bloomFilterFalsePositiveRateNearTarget() {
+        UserDirectory.BloomFilter filter = new UserDirectory.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        // 目标 1%，留出余量
+        assertTrue(falsePositives < 2_000, "误判 " + falsePositives);
+    }
+
+    @Test
+    void bloomFilterHandlesNonAsciiNames() {
+        UserDirectory.BloomFilter filter = new UserDirectory.BloomFilter(100, 0.01);
+        filter.add("张三");
+        assertTrue(filter.mightContain("张三"));
+    }
+}
@@ -0,0 +1,89 @@
+-- H2 (MySQL 模式) 下的表结构，与 code/script/mysql/grave.sql 保持一致，供基准测试使用
+DROP TABLE IF EXISTS canvas_snapshot;
+DROP TABLE IF EXISTS heritage_item;
+DROP TABLE IF EXISTS heritage;
+DROP TABLE IF EXISTS markdown;
+DROP TABLE IF EXISTS TextBox;
+DROP TABLE IF EXISTS ImageBox;
+DROP TABLE IF EXISTS CanvasDTO;
+DROP TABLE IF EXISTS `user`;
+
+CREATE TABLE CanvasDTO (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    uId BIGINT DEFAULT NULL,
+    title TEXT,
+    isPublic BOOLEAN DEFAULT TRUE,
+    version BIGINT NOT NULL DEFAULT 1,
+    claims BIGINT NOT NULL DEFAULT 0
+);
+CREATE INDEX idx_public_id ON CanvasDTO (isPublic, id);
+CREATE INDEX idx_uid_id ON CanvasDTO (uId, id, isPublic);
+
+CREATE TABLE ImageBox (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    pid BIGINT DEFAULT NULL,
+    imageUrl VARCHAR(255) DEFAULT NULL,
+    left_location INT DEFAULT NULL,
+    top_location INT DEFAULT NULL,
+    width_location INT DEFAULT NULL,
+    height_location INT DEFAULT NULL
+);
+CREATE INDEX idx_image_pid ON ImageBox (pid);
+
+CREATE TABLE TextBox (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    pid BIGINT DEFAULT NULL,
+    content TEXT,
+    left_location INT DEFAULT NULL,
+    top_location INT DEFAULT NULL,
+    width_location INT DEFAULT NULL,
+    height_location INT DEFAULT NULL
+);
+CREATE INDEX idx_text_pid ON TextBox (pid);
+
+CREATE TABLE markdown (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    pid BIGINT NOT NULL,
+    content TEXT,
+    left_location INT DEFAULT NULL,
+    top_location INT DEFAULT NULL,
+    width_location INT DEFAULT NULL,
+    height_location INT DEFAULT NULL
+);
+CREATE INDEX idx_markdown_pid ON markdown (pid);
+
+CREATE TABLE heritage (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    pid BIGINT DEFAULT NULL,
+    public_time DATETIME DEFAULT NULL,
+    released BOOLEAN NOT NULL DEFAULT TRUE,
+    left_location INT DEFAULT NULL,
+    top_location INT DEFAULT NULL,
+    width_location INT DEFAULT NULL,
+    height_location INT DEFAULT NULL
+);
+CREATE INDEX idx_heritage_pid ON heritage (pid);
+CREATE INDEX idx_released_time ON heritage (released, public_time);
+
+CREATE TABLE heritage_item (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    heritage_id BIGINT NOT NULL,
+    content TEXT NOT NULL,
+    is_private BOOLEAN NOT NULL DEFAULT FALSE,
+    user_id BIGINT DEFAULT 0,
+    FOREIGN KEY (heritage_id) REFERENCES heritage (id) ON DELETE CASCADE
+);
+CREATE INDEX idx_heritage_id ON heritage_item (heritage_id);
+
+CREATE TABLE canvas_snapshot (
+    canvas_id BIGINT NOT NULL PRIMARY KEY,
+    version BIGINT NOT NULL,
+    data BLOB NOT NULL
+);
+
+CREATE TABLE `user` (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(50) NOT NULL,
+    password VARCHAR(100) NOT NULL,
+    CONSTRAINT uk_username UNIQUE (username)
+);
@@ -0,0 +1,26 @@
+-- 子组件按画布批量加载 (pid IN (...)) 所需的索引
+CREATE INDEX idx_pid ON ImageBox (pid);
+CREATE INDEX idx_pid ON TextBox (pid);
+CREATE INDEX idx_pid ON markdown (pid);
+
+-- 公开画布索引启动时仅扫描 id，覆盖索引避免回表
+CREATE INDEX idx_public_id ON CanvasDTO (isPublic, id);
+
+-- 用户主页按 (uId, id) 游标分页，每页只扫描 size+1 行，与用户画布总数无关
+CREATE INDEX idx_uid_id ON CanvasDTO (uId, id, isPublic);
+
+-- 遗产定时公开：released 标记是否已到公开时间，读取时只看该标记；
+-- 调度器按 (released, public_time) 取出即将到期的遗产，已有数据中公开时间未到的先标记为未公开
+ALTER TABLE heritage ADD COLUMN released BOOLEAN NOT NULL DEFAULT TRUE AFTER public_time;
+UPDATE heritage SET released = FALSE WHERE public_time > NOW();
+CREATE INDEX idx_released_time ON heritage (released, public_time);
+
+-- 画布快照：version 随内容修改递增，快照版本与之不一致时读取方按规范化表重建
+ALTER TABLE CanvasDTO ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+-- 遗产领取只递增 claims（参与 ETag），不改 version，领取不会让快照过期
+ALTER TABLE CanvasDTO ADD COLUMN claims BIGINT NOT NULL DEFAULT 0;
+CREATE TABLE canvas_snapshot (
+    canvas_id BIGINT NOT NULL PRIMARY KEY,
+    version BIGINT NOT NULL,
+    data MEDIUMBLOB NOT NULL
+) ENGINE=InnoDB;